@@ -11,10 +11,16 @@ import com.github.jknack.handlebars.io.StringTemplateSource;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -36,6 +42,9 @@ public class ExportMain {
     @com.beust.jcommander.Parameter(names = {"--output", "-o"}, converter = FileConverter.class, required = false)
     File outputTerraform;
 
+    @com.beust.jcommander.Parameter(names = {"--labelled-output", "-l"}, converter = FileConverter.class, required = false)
+    File outputLabelledManifest;
+
     public static void main(String... argv) throws Exception {
         ExportMain main = new ExportMain();
         JCommander.newBuilder()
@@ -64,6 +73,11 @@ public class ExportMain {
             LOG.info("Writing output to {}", outputTerraform);
             FileUtils.writeStringToFile(outputTerraform, terraformResource, Charset.defaultCharset());
         }
+
+        if (outputLabelledManifest != null) {
+            LOG.info("Writing manifest with watch label to {}", outputLabelledManifest);
+            FileUtils.writeStringToFile(outputLabelledManifest, addWatchLabel(inputManifest), Charset.defaultCharset());
+        }
         LOG.info("Done");
     }
 
@@ -92,4 +106,54 @@ public class ExportMain {
         context.put("parameters", parameters);
         return template.apply(Context.newContext(context));
     }
+
+    //adds the watch label to every pod template (or bare pod) in the manifest that has kees annotations, so a creator in opt-in mode sees it
+    public static String addWatchLabel(File inputFile) throws Exception {
+        String annotationDomain = Utils.getAnnotationDomain();
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        Yaml yaml = new Yaml(options);
+
+        List<Object> documents = new ArrayList<>();
+        try (InputStream input = new FileInputStream(inputFile)) {
+            for (Object document : yaml.loadAll(input)) {
+                Map<String, Object> manifest = asMap(document);
+                if (manifest != null) {
+                    Map<String, Object> spec = asMap(manifest.get("spec"));
+                    Map<String, Object> template = spec != null ? asMap(spec.get("template")) : null;
+                    Map<String, Object> metadata = asMap((template != null ? template : manifest).get("metadata"));
+                    if (metadata != null && hasKeesAnnotations(asMap(metadata.get("annotations")), annotationDomain)) {
+                        Map<String, Object> labels = asMap(metadata.get("labels"));
+                        if (labels == null) {
+                            labels = new LinkedHashMap<>();
+                            metadata.put("labels", labels);
+                        }
+                        labels.put(Utils.getWatchLabel(), "true");
+                    }
+                }
+                documents.add(document);
+            }
+        }
+        return yaml.dumpAll(documents.iterator());
+    }
+
+    //yaml mappings load as maps with string keys, null for anything else
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    private static boolean hasKeesAnnotations(Map<String, Object> annotations, String annotationDomain) {
+        if (annotations == null) {
+            return false;
+        }
+        for (String key : annotations.keySet()) {
+            for (String prefix : new String[]{"init.", "secret.", "resource.", "lease."}) {
+                if (key.startsWith(prefix + annotationDomain + "/")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
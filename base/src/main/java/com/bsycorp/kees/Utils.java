@@ -134,6 +134,10 @@ public class Utils {
         return clusterLabel + "-kube-secret";
     }
 
+    public static String getPartitionedTableName(String clusterLabel) {
+        return clusterLabel + "-kube-secret-partitioned";
+    }
+
     public static String getAnnotationDomain() {
         String value = getEnvironment().get("ANNOTATION_DOMAIN");
         if (value==null) {
@@ -142,6 +146,11 @@ public class Utils {
         return value;
     }
 
+    //label marking pods that use kees, so the creator can have the API server filter pods for it
+    public static String getWatchLabel() {
+        return "init." + getAnnotationDomain() + "/enabled";
+    }
+
     public static Region getCloudRegion() {
         String value = getEnvironment().get("AWS_REGION");
         if (value==null) {
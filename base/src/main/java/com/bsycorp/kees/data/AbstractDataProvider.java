@@ -2,29 +2,55 @@ package com.bsycorp.kees.data;
 
 import com.bsycorp.kees.gpg.GPGKeyGenerator;
 import com.bsycorp.kees.models.SecretTypeEnum;
+import java.io.IOException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Base64;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.generators.Ed25519KeyPairGenerator;
+import org.bouncycastle.crypto.generators.X25519KeyPairGenerator;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECNamedDomainParameters;
+import org.bouncycastle.crypto.params.Ed25519KeyGenerationParameters;
+import org.bouncycastle.crypto.params.X25519KeyGenerationParameters;
+import org.bouncycastle.crypto.util.PrivateKeyInfoFactory;
+import org.bouncycastle.crypto.util.SubjectPublicKeyInfoFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractDataProvider implements DataProvider {
 
-    private static BaseConverter base62Converter = new BaseConverter("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
     private static Logger LOG = LoggerFactory.getLogger(AbstractDataProvider.class);
+    //null unless KEY_GENERATION_PARALLELISM is set, then single RSA keys are generated across several cores
+    private static ParallelRSAKeyPairGenerator parallelGenerator = ParallelRSAKeyPairGenerator.fromEnvironment();
 
     @Override
     public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId) {
+        return generatePairedRaw(type, annotationName, size, userId, null);
+    }
+
+    @Override
+    public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm) {
         SecureRandom random = getRandomFromKey(annotationName);
 
         if (type == SecretTypeEnum.RSA) {
             try {
-                KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-                kpg.initialize(size, random);
-                KeyPair keyPair = kpg.generateKeyPair();
+                KeyPair keyPair = takePooledKeyPair(size);
+                if (keyPair == null && parallelGenerator != null) {
+                    keyPair = parallelGenerator.generateKeyPair(size, random);
+                }
+                if (keyPair == null) {
+                    KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+                    kpg.initialize(size, random);
+                    keyPair = kpg.generateKeyPair();
+                }
                 //Note for future nick*, getEncoded() is actually DER encoding.. so its still a 'raw' value..
                 return new Object[]{
                         keyPair.getPublic().getEncoded(), keyPair.getPrivate().getEncoded()
@@ -36,24 +62,63 @@ public abstract class AbstractDataProvider implements DataProvider {
         } else if (type == SecretTypeEnum.GPG) {
             // generate password
             byte[] password = generateRaw(SecretTypeEnum.PASSWORD, annotationName, 128);
+            if ("ed25519".equals(algorithm)) {
+                GPGKeyGenerator.GPGKeyPair gpgKeyPair = new GPGKeyGenerator().generateEd25519KeyPair(userId, new String(password), random);
+                return new Object[]{gpgKeyPair.getPublicKey(), gpgKeyPair.getPrivateKey(), password};
+            }
 
             // generate gpg key
-            GPGKeyGenerator.GPGKeyPair gpgKeyPair = new GPGKeyGenerator().generateKeyPair(
-                    userId, new String(password), size, random);
+            KeyPair keyPair = takePooledKeyPair(size);
+            if (keyPair == null && parallelGenerator != null) {
+                keyPair = parallelGenerator.generateKeyPair(size, random);
+            }
+            GPGKeyGenerator.GPGKeyPair gpgKeyPair = keyPair != null
+                    ? new GPGKeyGenerator().generateKeyPair(userId, new String(password), keyPair)
+                    : new GPGKeyGenerator().generateKeyPair(userId, new String(password), size, random);
             return new Object[]{gpgKeyPair.getPublicKey(), gpgKeyPair.getPrivateKey(), password};
+        } else if (type == SecretTypeEnum.EC) {
+            //named curve parameters so the encoded keys carry the curve OID rather than explicit parameters
+            ASN1ObjectIdentifier curve = size == 384 ? SECObjectIdentifiers.secp384r1 : SECObjectIdentifiers.secp256r1;
+            ECKeyPairGenerator generator = new ECKeyPairGenerator();
+            generator.init(new ECKeyGenerationParameters(new ECNamedDomainParameters(curve, CustomNamedCurves.getByOID(curve)), random));
+            return encodeKeyPair(generator.generateKeyPair(), type);
+        } else if (type == SecretTypeEnum.ED25519) {
+            Ed25519KeyPairGenerator generator = new Ed25519KeyPairGenerator();
+            generator.init(new Ed25519KeyGenerationParameters(random));
+            return encodeKeyPair(generator.generateKeyPair(), type);
+        } else if (type == SecretTypeEnum.X25519) {
+            X25519KeyPairGenerator generator = new X25519KeyPairGenerator();
+            generator.init(new X25519KeyGenerationParameters(random));
+            return encodeKeyPair(generator.generateKeyPair(), type);
         } else {
             throw new RuntimeException("Unsupported secret type: " + type);
         }
     }
 
+    //same X.509/PKCS#8 DER encoding getEncoded() gives for the RSA keys
+    private Object[] encodeKeyPair(AsymmetricCipherKeyPair keyPair, SecretTypeEnum type) {
+        try {
+            return new Object[]{
+                    SubjectPublicKeyInfoFactory.createSubjectPublicKeyInfo(keyPair.getPublic()).getEncoded(),
+                    PrivateKeyInfoFactory.createPrivateKeyInfo(keyPair.getPrivate()).getEncoded()
+            };
+        } catch (IOException e) {
+            LOG.error("Error encoding " + type + " key", e);
+            throw new RuntimeException("Error encoding " + type + " key");
+        }
+    }
+
     @Override
     public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size) {
+        return generateRaw(type, annotationName, size, null);
+    }
+
+    @Override
+    public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size, String alphabet) {
         SecureRandom random = getRandomFromKey(annotationName);
 
         if (type == SecretTypeEnum.PASSWORD) {
-            byte[] bytes = new byte[size];
-            random.nextBytes(bytes);
-            return base62Converter.encode(bytes).substring(0, size / 8).getBytes();
+            return generatePassword(size, alphabet, random).getBytes();
 
         } else if (type == SecretTypeEnum.RANDOM) {
             byte[] bytes = new byte[size / 8];
@@ -67,14 +132,34 @@ public abstract class AbstractDataProvider implements DataProvider {
 
     protected abstract SecureRandom getRandomFromKey(String annotationName);
 
+    //one character for every 8 bits of size
+    protected String generatePassword(int size, String alphabet, SecureRandom random) {
+        return PasswordGenerator.forAlphabet(alphabet).generate(size / 8, random);
+    }
+
+    //pre-generated RSA key pair to use instead of generating one, null to generate
+    protected KeyPair takePooledKeyPair(int size) {
+        return null;
+    }
+
     @Override
     public String generateBase64Encoded(SecretTypeEnum type, String annotationName, int size) {
-        return Base64.getEncoder().encodeToString(generateRaw(type, annotationName, size));
+        return generateBase64Encoded(type, annotationName, size, null);
+    }
+
+    @Override
+    public String generateBase64Encoded(SecretTypeEnum type, String annotationName, int size, String alphabet) {
+        return Base64.getEncoder().encodeToString(generateRaw(type, annotationName, size, alphabet));
     }
 
     @Override
     public String[] generatePairedBase64Encoded(SecretTypeEnum type, String annotationName, int size, String userId) {
-        Object[] results = generatePairedRaw(type, annotationName, size, userId);
+        return generatePairedBase64Encoded(type, annotationName, size, userId, null);
+    }
+
+    @Override
+    public String[] generatePairedBase64Encoded(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm) {
+        Object[] results = generatePairedRaw(type, annotationName, size, userId, algorithm);
         return Arrays.stream(results).map(o -> Base64.getEncoder().encodeToString((byte[]) o)).toArray(String[]::new);
     }
 }
@@ -1,107 +1,189 @@
 package com.bsycorp.kees.data;
 
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+//converts bytes, read as one unsigned big-endian number, to and from that number written with the character set as digits.
+//the number is held as 32 bit limbs and divided/multiplied by the largest power of the base that fits in an int, so each
+//pass over the limbs handles several digits with primitive arithmetic. every digit still depends on the whole number so it
+//stays quadratic in the input length, but without BigInteger allocations or re-copying the output
 public class BaseConverter {
 
     public static final float BITS_IN_BYTE = 8.0f;
-    private String charSet;
-    private int base = -1;
+    private final char[] digits;
+    //digit value per character, -1 for characters outside the set
+    private final int[] digitValues;
+    private final int base;
+    private final double bitsPerDigit;
+    //number of digits handled per pass and base^chunkDigits
+    private final int chunkDigits;
+    private final long chunk;
+
     public BaseConverter(String charSetAsString) {
         assert((charSetAsString != null) && (charSetAsString.length() > 1));
-        this.charSet = charSetAsString;
+        this.digits = charSetAsString.toCharArray();
+        this.base = digits.length;
+        this.bitsPerDigit = Math.log(base) / Math.log(2);
+
+        char maxChar = 0;
+        for (char c : digits) {
+            maxChar = (char) Math.max(maxChar, c);
+        }
+        this.digitValues = new int[maxChar + 1];
+        Arrays.fill(digitValues, -1);
+        for (int i = 0; i < digits.length; i++) {
+            digitValues[digits[i]] = i;
+        }
+
+        //keep chunk below 2^31 so remainder * 2^32 + limb can't overflow a long
+        int chunkDigits = 1;
+        long chunk = base;
+        while (chunk * base < Integer.MAX_VALUE) {
+            chunk *= base;
+            chunkDigits++;
+        }
+        this.chunkDigits = chunkDigits;
+        this.chunk = chunk;
     }
 
     //This can return a variable number of characters, depending on the generated bytes, if you want a fixed length reuslt, add desiredLength.
     public String encode(byte[] b) {
-
         //don't pass NULL and has something in it
-
         assert((b != null) && (b.length > 0));
-        //Calculate the divider based on the size of the character set (e.g 62 characters === base 62)
 
-        BigInteger divider = BigInteger.valueOf(charSet.length());
-
-        //create a +ive BigInteger from the byte array
-
-        BigInteger currentDividend = new BigInteger(1, b);
-
-        //The StringBuilder will hold the ever increasing string representation
-
-        StringBuilder sb = new StringBuilder();
+        int[] limbs = toLimbs(b);
+        //enough for every digit of the number plus the zero padding of the last chunk
+        char[] out = new char[(int) Math.ceil(b.length * BITS_IN_BYTE / bitsPerDigit) + chunkDigits];
+        int position = out.length;
+        int start = skipZeroLimbs(limbs, 0);
         do {
-
-            //Get the quotient and remainder when dividing the current dividend
-            BigInteger[] bigIntDivideAndRemainder = currentDividend.divideAndRemainder(divider);
-
-            //Find character in the charSet at the position of the remainder and insert at start of builder
-            sb.insert(0, charSet.charAt(bigIntDivideAndRemainder[1].intValue()));
-
-            //Set the current dividend to the quotient
-            currentDividend = bigIntDivideAndRemainder[0];
-
-        } while (currentDividend.compareTo(BigInteger.ZERO) >  0);
-        //The final string is returned
-        return sb.toString();
-
+            //divide the whole number by the chunk in place, the remainder holds the next chunkDigits digits
+            long remainder = 0;
+            for (int i = start; i < limbs.length; i++) {
+                long current = (remainder << 32) | (limbs[i] & 0xffffffffL);
+                limbs[i] = (int) (current / chunk);
+                remainder = current % chunk;
+            }
+            start = skipZeroLimbs(limbs, start);
+
+            for (int i = 0; i < chunkDigits; i++) {
+                out[--position] = digits[(int) (remainder % base)];
+                remainder /= base;
+            }
+        } while (start < limbs.length);
+
+        //only the most significant chunk can have leading zero digits, drop them but keep at least one digit
+        while (position < out.length - 1 && out[position] == digits[0]) {
+            position++;
+        }
+        return new String(out, position, out.length - position);
     }
 
     public String encode(byte[] b, int desiredLength) {
         String converted = encode(b);
-        while(converted.length() < desiredLength){
-            //left pad if we haven't hit our
-            converted = "0" + converted;
+        if (converted.length() >= desiredLength) {
+            return converted;
         }
-        return converted;
+        //left pad with zero digits
+        char[] padded = new char[desiredLength];
+        int padding = desiredLength - converted.length();
+        Arrays.fill(padded, 0, padding, digits[0]);
+        converted.getChars(0, converted.length(), padded, padding);
+        return new String(padded);
     }
 
+    //returns the unsigned bytes of the number without leading zero bytes, empty for zero
     public byte[] decode(String baseAsStr) {
-        //Initialise
-        BigInteger runningValue = new BigInteger("0");
-
-        //Reverse the string so earliest (lowest) digits come first
-        StringBuilder sb = (new StringBuilder(baseAsStr)).reverse();
+        int[] limbs = decodeLimbs(baseAsStr);
+        byte[] result = new byte[byteLength(limbs)];
+        writeBytes(limbs, result, result.length);
+        return result;
+    }
 
-        //The multiplier will go up in multiple of the increment
-        BigInteger multiplier = BigInteger.ONE;
-        BigInteger increment = BigInteger.valueOf(charSet.length());
+    public byte[] decode(String baseAsStr, int desiredLength) {
+        int[] limbs = decodeLimbs(baseAsStr);
+        int length = byteLength(limbs);
+        if(length > desiredLength){
+            throw new RuntimeException("Decoded length of " + length + " is longer than desired length of " + desiredLength);
+        }
 
-        for (int i=0; i < sb.length(); i++) {
+        //bytes are written from the end so the start is left as zero padding
+        byte[] paddedResult = new byte[desiredLength];
+        writeBytes(limbs, paddedResult, length);
+        return paddedResult;
+    }
 
-            //Get the index position of the current character in the character set
-            BigInteger value = BigInteger.valueOf(charSet.indexOf(sb.charAt(i)));
-            //and multiply
-            runningValue = runningValue.add(multiplier.multiply(value));
+    //big-endian limbs, the first limb takes any bytes left over from a multiple of 4
+    private static int[] toLimbs(byte[] b) {
+        int[] limbs = new int[(b.length + 3) / 4];
+        int offset = limbs.length * 4 - b.length;
+        for (int i = 0; i < b.length; i++) {
+            int position = i + offset;
+            limbs[position >>> 2] |= (b[i] & 0xff) << (8 * (3 - (position & 3)));
+        }
+        return limbs;
+    }
 
-            //increase the multiplier
-            multiplier = multiplier.multiply(increment);
+    private static int skipZeroLimbs(int[] limbs, int start) {
+        while (start < limbs.length && limbs[start] == 0) {
+            start++;
         }
+        return start;
+    }
 
-        //During decode we want to return the unsigned bytes for a given input, by default toByteArray() returns the signed values, meaning sometimes
-        //it has a leading 0x00 byte, we can detect this by comparing the bitLength (the number of bits for a given input) to the actual size toByteArray()
-        //gives us, most of the time they are they same, but when we get the leading 0x00 byte it is larger than the bitLength.
-        //When it is larger than the bitLength trim off the leading byte and return the rest.
-        double bitLengthBytes = Math.ceil(runningValue.bitLength() / BITS_IN_BYTE);
-        byte[] resultBytes = runningValue.toByteArray();
-        if(bitLengthBytes < resultBytes.length){
-            return Arrays.copyOfRange(resultBytes, 1, resultBytes.length);
+    //little-endian limbs, built by multiplying in chunkDigits digits at a time from the most significant end
+    private int[] decodeLimbs(String value) {
+        int length = value.length();
+        int[] limbs = new int[(int) Math.ceil(length * bitsPerDigit / 32) + 1];
+        int used = 0;
+        //the first group takes the digits left over from a multiple of chunkDigits
+        int groupLength = length % chunkDigits == 0 ? chunkDigits : length % chunkDigits;
+
+        int i = 0;
+        while (i < length) {
+            long group = 0;
+            long multiplier = 1;
+            for (int end = i + groupLength; i < end; i++) {
+                group = group * base + digitValue(value.charAt(i));
+                multiplier *= base;
+            }
+
+            long carry = group;
+            for (int j = 0; j < used; j++) {
+                long current = (limbs[j] & 0xffffffffL) * multiplier + carry;
+                limbs[j] = (int) current;
+                carry = current >>> 32;
+            }
+            if (carry != 0) {
+                limbs[used++] = (int) carry;
+            }
+            groupLength = chunkDigits;
         }
-        return resultBytes;
+        return limbs;
     }
 
-    public byte[] decode(String baseAsStr, int desiredLength) {
-        byte[] result = decode(baseAsStr);
-        if(result.length > desiredLength){
-            throw new RuntimeException("Decoded length of " + result.length + " is longer than desired length of " + desiredLength);
+    private int digitValue(char c) {
+        int value = c < digitValues.length ? digitValues[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid character for base " + base + ": " + c);
         }
+        return value;
+    }
 
-        //then add in the proper bytes after the padding.
-        ByteBuffer paddedResult = ByteBuffer.allocate(desiredLength);
-        paddedResult.position(desiredLength - result.length);
-        paddedResult.put(decode(baseAsStr));
-        return paddedResult.array();
+    private static int byteLength(int[] limbs) {
+        int top = limbs.length - 1;
+        while (top >= 0 && limbs[top] == 0) {
+            top--;
+        }
+        if (top < 0) {
+            return 0;
+        }
+        return top * 4 + (32 - Integer.numberOfLeadingZeros(limbs[top]) + 7) / 8;
     }
 
+    //writes the lowest length bytes of the number big-endian at the end of out
+    private static void writeBytes(int[] limbs, byte[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[out.length - 1 - i] = (byte) (limbs[i >>> 2] >>> (8 * (i & 3)));
+        }
+    }
 }
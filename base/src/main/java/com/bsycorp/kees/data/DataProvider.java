@@ -7,11 +7,21 @@ public interface DataProvider {
     //returns the raw bytes of the generated secret
     byte[] generateRaw(SecretTypeEnum type, String annotationName, int size);
 
+    //alphabet names the characters a PASSWORD is drawn from, see PasswordGenerator, null for the default
+    byte[] generateRaw(SecretTypeEnum type, String annotationName, int size, String alphabet);
+
     //returns Public, Private for RSA/GPG as raw bytes/binary format
     Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId);
 
+    //algorithm picks the key algorithm for types that have more than one, eg. rsa or ed25519 for GPG, null for the default
+    Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm);
+
     String generateBase64Encoded(SecretTypeEnum type, String annotationName, int size);
 
+    String generateBase64Encoded(SecretTypeEnum type, String annotationName, int size, String alphabet);
+
     String[] generatePairedBase64Encoded(SecretTypeEnum type, String annotationName, int size, String userId);
 
+    String[] generatePairedBase64Encoded(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm);
+
 }
@@ -17,6 +17,7 @@ public class DeterministicDataProvider extends AbstractDataProvider {
 
     private static Logger LOG = LoggerFactory.getLogger(DeterministicDataProvider.class);
     private static final Base64.Decoder DECODER = Base64.getDecoder();
+    private static final BaseConverter BASE62_CONVERTER = new BaseConverter("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
     private static final String PRECALCULATED_VALUES_FILE_NAME = "1000_deterministic_rsa_keys.json";
     private final List<String[]> encodedPrecalculatedValues;
 
@@ -35,13 +36,36 @@ public class DeterministicDataProvider extends AbstractDataProvider {
     }
 
     @Override
-    public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size) {
+    public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size, String alphabet) {
         LOG.info("Generating deterministic {} data for key '{}' of size: {}", type, annotationName, size);
-        return super.generateRaw(type, annotationName, size);
+        return super.generateRaw(type, annotationName, size, alphabet);
     }
 
     @Override
-    public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId) {
+    protected String generatePassword(int size, String alphabet, SecureRandom random) {
+        if (alphabet == null || PasswordGenerator.DEFAULT_ALPHABET.equals(alphabet)) {
+            //the original base62 conversion, kept so existing local mode passwords (and the GPG keys protected by them) don't change
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            return BASE62_CONVERTER.encode(bytes).substring(0, size / 8);
+        }
+        return super.generatePassword(size, alphabet, random);
+    }
+
+    @Override
+    public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm) {
+        if (SecretTypeEnum.RSA != type && SecretTypeEnum.GPG != type) {
+            //elliptic curve keys are cheap enough to generate from the seeded random every time
+            LOG.info("Generating deterministic {} key pair for key '{}'", type, annotationName);
+            return super.generatePairedRaw(type, annotationName, size, userId, algorithm);
+        }
+        if (SecretTypeEnum.GPG == type && "ed25519".equals(algorithm)) {
+            LOG.info("Generating deterministic ed25519 GPG key pair for key '{}'", annotationName);
+            final byte[] password = super.generateRaw(SecretTypeEnum.PASSWORD, annotationName, 128);
+            final GPGKeyGenerator.GPGKeyPair gpgKeyPair = new GPGKeyGenerator().generateDeterministicEd25519KeyPair(
+                    userId, new String(password), getRandomFromKey(annotationName));
+            return new Object[]{gpgKeyPair.getPublicKey(), gpgKeyPair.getPrivateKey(), password};
+        }
         LOG.info("Using pre-generated value for {}", annotationName);
         String rootAnnotationName = Parameter.extractBareParameterName(annotationName);
         String[] values = encodedPrecalculatedValues.get(
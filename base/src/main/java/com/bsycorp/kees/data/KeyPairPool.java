@@ -0,0 +1,148 @@
+package com.bsycorp.kees.data;
+
+import com.bsycorp.kees.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//pre-generates RSA key pairs per key size in the background so creating an RSA/GPG secret doesn't wait on key generation.
+//each key pair is handed out once, a miss falls back to generating inline and the pool refills itself asynchronously
+public class KeyPairPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final int depth;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Integer, BlockingQueue<KeyPair>> available = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> refilling = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor;
+
+    private final AtomicInteger hitCounter = new AtomicInteger();
+    private final AtomicInteger missCounter = new AtomicInteger();
+    private final AtomicInteger refillCounter = new AtomicInteger();
+    private final AtomicLong totalRefillMillis = new AtomicLong();
+    private final AtomicLong maxRefillMillis = new AtomicLong();
+
+    public KeyPairPool(int depth, int threads) {
+        this.depth = depth;
+        this.refillExecutor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "key-pool-refill");
+            thread.setDaemon(true);
+            //refills are background work, key generation someone is waiting on should go first
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    //returns null when KEY_POOL_DEPTH isn't set, sizes listed in KEY_POOL_SIZES are filled straight away rather than on first use
+    public static KeyPairPool fromEnvironment() {
+        Map<String, String> environment = Utils.getEnvironment();
+        String depth = environment.get("KEY_POOL_DEPTH");
+        if (depth == null || Integer.parseInt(depth.trim()) <= 0) {
+            return null;
+        }
+        String threads = environment.get("KEY_POOL_THREADS");
+        KeyPairPool pool = new KeyPairPool(Integer.parseInt(depth.trim()), threads != null ? Integer.parseInt(threads.trim()) : 1);
+
+        String sizes = environment.get("KEY_POOL_SIZES");
+        if (sizes != null) {
+            for (String size : sizes.split(",")) {
+                if (!size.trim().isEmpty()) {
+                    pool.warm(Integer.parseInt(size.trim()));
+                }
+            }
+        }
+        return pool;
+    }
+
+    //removes a key pair of the given size from the pool, null if none is ready
+    public KeyPair take(int size) {
+        KeyPair keyPair = getQueue(size).poll();
+        if (keyPair != null) {
+            hitCounter.incrementAndGet();
+        } else {
+            missCounter.incrementAndGet();
+        }
+        refill(size);
+        return keyPair;
+    }
+
+    public void warm(int size) {
+        refill(size);
+    }
+
+    private void refill(int size) {
+        BlockingQueue<KeyPair> queue = getQueue(size);
+        AtomicInteger pending = refilling.computeIfAbsent(size, k -> new AtomicInteger());
+        while (true) {
+            int current = pending.get();
+            if (queue.size() + current >= depth) {
+                return;
+            }
+            if (pending.compareAndSet(current, current + 1)) {
+                refillExecutor.submit(() -> generate(size, queue, pending));
+            }
+        }
+    }
+
+    private void generate(int size, BlockingQueue<KeyPair> queue, AtomicInteger pending) {
+        long start = System.currentTimeMillis();
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+            kpg.initialize(size, random);
+            KeyPair keyPair = kpg.generateKeyPair();
+
+            long duration = System.currentTimeMillis() - start;
+            refillCounter.incrementAndGet();
+            totalRefillMillis.addAndGet(duration);
+            maxRefillMillis.accumulateAndGet(duration, Math::max);
+            queue.add(keyPair);
+        } catch (Exception e) {
+            LOG.error("Error pre-generating RSA key of size: " + size, e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private BlockingQueue<KeyPair> getQueue(int size) {
+        return available.computeIfAbsent(size, k -> new LinkedBlockingQueue<>());
+    }
+
+    public int getAvailable(int size) {
+        return getQueue(size).size();
+    }
+
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    public AtomicInteger getHitCounter() {
+        return hitCounter;
+    }
+
+    public AtomicInteger getMissCounter() {
+        return missCounter;
+    }
+
+    public AtomicInteger getRefillCounter() {
+        return refillCounter;
+    }
+
+    public AtomicLong getTotalRefillMillis() {
+        return totalRefillMillis;
+    }
+
+    public AtomicLong getMaxRefillMillis() {
+        return maxRefillMillis;
+    }
+}
@@ -0,0 +1,168 @@
+package com.bsycorp.kees.data;
+
+import com.bsycorp.kees.Utils;
+import org.bouncycastle.math.ec.WNafUtil;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+//generates a single RSA key pair using several cores, p and q are searched for at the same time and each search runs
+//speculative candidates on several threads, first prime found wins. the checks on p, q, n and d follow BouncyCastle's RSAKeyPairGenerator
+public class ParallelRSAKeyPairGenerator {
+
+    private static final BigInteger PUBLIC_EXPONENT = BigInteger.valueOf(0x10001);
+    private static final int CERTAINTY = 100;
+    private static final BigInteger SMALL_PRIMES_PRODUCT = getSmallPrimesProduct(2000);
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    public ParallelRSAKeyPairGenerator(int parallelism) {
+        //at least one searcher for each of p and q
+        this.parallelism = Math.max(2, parallelism);
+        this.executor = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread thread = new Thread(r, "rsa-prime-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //returns null unless KEY_GENERATION_PARALLELISM is above 1
+    public static ParallelRSAKeyPairGenerator fromEnvironment() {
+        String parallelism = Utils.getEnvironment().get("KEY_GENERATION_PARALLELISM");
+        if (parallelism == null || Integer.parseInt(parallelism.trim()) <= 1) {
+            return null;
+        }
+        return new ParallelRSAKeyPairGenerator(Integer.parseInt(parallelism.trim()));
+    }
+
+    public KeyPair generateKeyPair(int strength, SecureRandom random) {
+        int pBitLength = (strength + 1) / 2;
+        int qBitLength = strength - pBitLength;
+        //FIPS 186-4, p and q mustn't share their top 100 bits
+        int minDiffBits = strength / 2 - 100;
+        int minWeight = strength >> 2;
+
+        try {
+            while (true) {
+                //split the searchers between p and q
+                int pSearchers = parallelism / 2;
+                Future<BigInteger> pFuture = executor.submit(() -> findPrime(pBitLength, pSearchers, random));
+                BigInteger q = findPrime(qBitLength, parallelism - pSearchers, random);
+                BigInteger p = get(pFuture);
+
+                if (minDiffBits > 0 && p.subtract(q).abs().bitLength() < minDiffBits) {
+                    continue;
+                }
+                BigInteger n = p.multiply(q);
+                if (n.bitLength() != strength) {
+                    continue;
+                }
+                //low weight moduli are open to special purpose factoring
+                if (WNafUtil.getNafWeight(n) < minWeight) {
+                    continue;
+                }
+
+                if (p.compareTo(q) < 0) {
+                    BigInteger swap = p;
+                    p = q;
+                    q = swap;
+                }
+                BigInteger pSub1 = p.subtract(BigInteger.ONE);
+                BigInteger qSub1 = q.subtract(BigInteger.ONE);
+                BigInteger lcm = pSub1.divide(pSub1.gcd(qSub1)).multiply(qSub1);
+                BigInteger d = PUBLIC_EXPONENT.modInverse(lcm);
+                //a small private exponent is weak, FIPS 186-4 wants d > 2^(strength/2)
+                if (d.bitLength() <= qBitLength) {
+                    continue;
+                }
+
+                KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+                return new KeyPair(
+                        keyFactory.generatePublic(new RSAPublicKeySpec(n, PUBLIC_EXPONENT)),
+                        keyFactory.generatePrivate(new RSAPrivateCrtKeySpec(n, PUBLIC_EXPONENT, d, p, q,
+                                d.mod(pSub1), d.mod(qSub1), q.modInverse(p))));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error generating RSA key", e);
+        }
+    }
+
+    //runs searchers in parallel for a prime of the given length, the first one found is used and the others stop
+    private BigInteger findPrime(int bitLength, int searchers, SecureRandom random) {
+        AtomicReference<BigInteger> found = new AtomicReference<>();
+        //squared lower bound of sqrt(2) * 2^(bitLength - 1), so the product of two primes has the full length
+        BigInteger squaredBound = BigInteger.ONE.shiftLeft(2 * bitLength - 1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < searchers; i++) {
+            futures.add(executor.submit(() -> search(bitLength, squaredBound, random, found)));
+        }
+        search(bitLength, squaredBound, random, found);
+        //other searchers stop at their next candidate, not waiting on them means concurrent generations can't block each other
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+        return found.get();
+    }
+
+    private void search(int bitLength, BigInteger squaredBound, SecureRandom random, AtomicReference<BigInteger> found) {
+        while (found.get() == null) {
+            BigInteger candidate = new BigInteger(bitLength, random).setBit(bitLength - 1).setBit(0);
+            if (candidate.multiply(candidate).compareTo(squaredBound) < 0) {
+                continue;
+            }
+            //trial division by the small primes rules out most candidates far cheaper than a primality test
+            if (!candidate.gcd(SMALL_PRIMES_PRODUCT).equals(BigInteger.ONE)) {
+                continue;
+            }
+            //e is prime so gcd(e, p - 1) is 1 unless e divides p - 1
+            if (candidate.mod(PUBLIC_EXPONENT).equals(BigInteger.ONE)) {
+                continue;
+            }
+            if (found.get() == null && candidate.isProbablePrime(CERTAINTY)) {
+                found.compareAndSet(null, candidate);
+            }
+        }
+    }
+
+    private static BigInteger getSmallPrimesProduct(int limit) {
+        BigInteger product = BigInteger.ONE;
+        for (int i = 3; i < limit; i += 2) {
+            if (BigInteger.valueOf(i).isProbablePrime(CERTAINTY)) {
+                product = product.multiply(BigInteger.valueOf(i));
+            }
+        }
+        return product;
+    }
+
+    private <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted generating RSA key", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error generating RSA key", e.getCause());
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
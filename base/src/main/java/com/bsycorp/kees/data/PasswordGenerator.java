@@ -0,0 +1,86 @@
+package com.bsycorp.kees.data;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//draws each password character uniformly from the alphabet by rejection sampling, taking only as many random bits
+//per draw as the alphabet needs, so the cost is linear in the password length
+public class PasswordGenerator {
+
+    public static final String DEFAULT_ALPHABET = "base62";
+    private static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final Map<String, PasswordGenerator> ALPHABETS = new LinkedHashMap<>();
+
+    static {
+        ALPHABETS.put("base62", new PasswordGenerator(BASE62));
+        ALPHABETS.put("alpha", new PasswordGenerator("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"));
+        ALPHABETS.put("numeric", new PasswordGenerator("0123456789"));
+        ALPHABETS.put("hex", new PasswordGenerator("0123456789abcdef"));
+        ALPHABETS.put("urlsafe", new PasswordGenerator(BASE62 + "-_"));
+        //no quotes, backslash or comma so values are safe to drop into config files and connection strings
+        ALPHABETS.put("symbols", new PasswordGenerator(BASE62 + "!#$%&()*+-.:;<=>?@[]^_{|}~"));
+    }
+
+    private final char[] alphabet;
+    private final int bits;
+    private final int mask;
+
+    public PasswordGenerator(String alphabet) {
+        if (alphabet == null || alphabet.length() < 2 || alphabet.length() > 256) {
+            throw new IllegalArgumentException("Alphabet must have between 2 and 256 characters");
+        }
+        this.alphabet = alphabet.toCharArray();
+        //smallest number of bits that can index every character
+        this.bits = 32 - Integer.numberOfLeadingZeros(alphabet.length() - 1);
+        this.mask = (1 << bits) - 1;
+    }
+
+    public static PasswordGenerator forAlphabet(String name) {
+        PasswordGenerator generator = ALPHABETS.get(name != null ? name : DEFAULT_ALPHABET);
+        if (generator == null) {
+            throw new IllegalArgumentException("Unknown alphabet: " + name + ", expected one of " + ALPHABETS.keySet());
+        }
+        return generator;
+    }
+
+    public static Set<String> getAlphabetNames() {
+        return Collections.unmodifiableSet(ALPHABETS.keySet());
+    }
+
+    public String generate(int length, SecureRandom random) {
+        char[] password = new char[length];
+        //enough bytes for the expected number of draws with a little slack, only topped up if rejections run unusually high
+        byte[] entropy = new byte[(int) Math.ceil((double) length * bits * (mask + 1) / alphabet.length / 8) + 8];
+        random.nextBytes(entropy);
+
+        int position = 0;
+        long buffer = 0;
+        int available = 0;
+        int count = 0;
+        while (count < length) {
+            if (available < bits) {
+                if (position == entropy.length) {
+                    random.nextBytes(entropy);
+                    position = 0;
+                }
+                buffer = (buffer << 8) | (entropy[position++] & 0xff);
+                available += 8;
+                continue;
+            }
+            int index = (int) (buffer >>> (available - bits)) & mask;
+            available -= bits;
+            //indexes past the end are rejected rather than wrapped, wrapping would favour the first characters
+            if (index < alphabet.length) {
+                password[count++] = alphabet[index];
+            }
+        }
+        return new String(password);
+    }
+
+    public String getAlphabet() {
+        return new String(alphabet);
+    }
+}
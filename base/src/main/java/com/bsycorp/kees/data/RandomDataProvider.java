@@ -4,26 +4,55 @@ import com.bsycorp.kees.models.SecretTypeEnum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.security.KeyPair;
 import java.security.SecureRandom;
 
 public class RandomDataProvider extends AbstractDataProvider {
 
     private static Logger LOG = LoggerFactory.getLogger(RandomDataProvider.class);
-    private static SecureRandom secureRandom = new SecureRandom();
+    private final KeyPairPool keyPairPool;
+    private final SecureRandomStrategy randomStrategy;
+
+    public RandomDataProvider() {
+        this(KeyPairPool.fromEnvironment());
+    }
+
+    //pool can be null to always generate key pairs on request
+    public RandomDataProvider(KeyPairPool keyPairPool) {
+        this(keyPairPool, SecureRandomStrategy.fromEnvironment());
+    }
+
+    public RandomDataProvider(KeyPairPool keyPairPool, SecureRandomStrategy randomStrategy) {
+        this.keyPairPool = keyPairPool;
+        this.randomStrategy = randomStrategy;
+    }
 
     @Override
-    public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId) {
+    public Object[] generatePairedRaw(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm) {
         LOG.info("Generating random {} data for key '{}' of size: {}", type, annotationName, size);
-        return super.generatePairedRaw(type, annotationName, size, userId);
+        return super.generatePairedRaw(type, annotationName, size, userId, algorithm);
     }
 
     @Override
-    public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size) {
+    public byte[] generateRaw(SecretTypeEnum type, String annotationName, int size, String alphabet) {
         LOG.info("Generating random {} data for key '{}' of size: {}", type, annotationName, size);
-        return super.generateRaw(type, annotationName, size);
+        return super.generateRaw(type, annotationName, size, alphabet);
     }
 
     protected SecureRandom getRandomFromKey(String key) {
-        return secureRandom;
+        return randomStrategy.get();
+    }
+
+    @Override
+    protected KeyPair takePooledKeyPair(int size) {
+        return keyPairPool != null ? keyPairPool.take(size) : null;
+    }
+
+    public KeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+
+    public SecureRandomStrategy getRandomStrategy() {
+        return randomStrategy;
     }
 }
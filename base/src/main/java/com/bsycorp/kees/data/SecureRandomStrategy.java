@@ -0,0 +1,115 @@
+package com.bsycorp.kees.data;
+
+import com.bsycorp.kees.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//hands each thread its own SecureRandom so generation on the worker threads doesn't contend on one shared instance. the JVM
+//default NativePRNG wouldn't help here, all its instances share one static source behind a global lock, so the default is
+//SHA1PRNG which keeps its state per instance. a thread's instance is replaced once the reseed interval has passed, new
+//instances are seeded from the platform's non-blocking entropy source
+public class SecureRandomStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SecureRandomStrategy.class);
+    //available on Java 8, which releases are built and run on
+    private static final String DEFAULT_ALGORITHM = "SHA1PRNG";
+    private static final int SEED_BYTES = 32;
+    //only read when an instance is created, so sharing it doesn't reintroduce the contention
+    private static final SecureRandom SEED_SOURCE = createSeedSource();
+    private static final long DEFAULT_RESEED_SECONDS = 3600;
+
+    private final String algorithm;
+    private final long reseedMillis;
+    private final ThreadLocal<ThreadRandom> threadRandom = new ThreadLocal<>();
+    private final AtomicInteger createdCounter = new AtomicInteger();
+
+    //algorithm can be null for the JVM default, reseedMillis of 0 or less keeps each thread's instance for good
+    public SecureRandomStrategy(String algorithm, long reseedMillis) {
+        this.algorithm = getAvailableAlgorithm(algorithm);
+        this.reseedMillis = reseedMillis;
+    }
+
+    public static SecureRandomStrategy fromEnvironment() {
+        Map<String, String> environment = Utils.getEnvironment();
+        String algorithm = environment.get("SECURE_RANDOM_ALGORITHM");
+        String reseedSeconds = environment.get("SECURE_RANDOM_RESEED_SECONDS");
+        return new SecureRandomStrategy(algorithm != null ? algorithm.trim() : DEFAULT_ALGORITHM,
+                TimeUnit.SECONDS.toMillis(reseedSeconds != null ? Long.parseLong(reseedSeconds.trim()) : DEFAULT_RESEED_SECONDS));
+    }
+
+    private static String getAvailableAlgorithm(String algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        try {
+            SecureRandom.getInstance(algorithm);
+            return algorithm;
+        } catch (NoSuchAlgorithmException e) {
+            LOG.warn("SecureRandom algorithm {} isn't available, using the JVM default", algorithm);
+            return null;
+        }
+    }
+
+    //SHA1PRNG left to seed itself reads /dev/random on Java 8 and can block, seed it from urandom instead
+    private static SecureRandom createSeedSource() {
+        try {
+            return SecureRandom.getInstance("NativePRNGNonBlocking");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    public SecureRandom get() {
+        ThreadRandom current = threadRandom.get();
+        long now = currentTimeMillis();
+        if (current == null || (reseedMillis > 0 && now - current.createdAt >= reseedMillis)) {
+            current = new ThreadRandom(create(), now);
+            threadRandom.set(current);
+        }
+        return current.random;
+    }
+
+    private SecureRandom create() {
+        createdCounter.incrementAndGet();
+        if (algorithm == null) {
+            return new SecureRandom();
+        }
+        try {
+            SecureRandom random = SecureRandom.getInstance(algorithm);
+            //seeded before first use so it doesn't seed itself
+            random.setSeed(SEED_SOURCE.generateSeed(SEED_BYTES));
+            return random;
+        } catch (NoSuchAlgorithmException e) {
+            //checked in the constructor
+            throw new RuntimeException("SecureRandom algorithm unavailable: " + algorithm, e);
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    //null when the JVM default is used
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public AtomicInteger getCreatedCounter() {
+        return createdCounter;
+    }
+
+    private static class ThreadRandom {
+        private final SecureRandom random;
+        private final long createdAt;
+
+        ThreadRandom(SecureRandom random, long createdAt) {
+            this.random = random;
+            this.createdAt = createdAt;
+        }
+    }
+}
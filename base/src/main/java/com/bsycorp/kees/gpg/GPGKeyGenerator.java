@@ -1,6 +1,8 @@
 package com.bsycorp.kees.gpg;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
@@ -10,8 +12,16 @@ import org.bouncycastle.bcpg.HashAlgorithmTags;
 import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
 import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
 import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.generators.Ed25519KeyPairGenerator;
 import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
+import org.bouncycastle.crypto.generators.X25519KeyPairGenerator;
+import org.bouncycastle.crypto.params.Ed25519KeyGenerationParameters;
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
 import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
+import org.bouncycastle.crypto.params.X25519KeyGenerationParameters;
+import org.bouncycastle.crypto.util.PrivateKeyFactory;
+import org.bouncycastle.crypto.util.PublicKeyFactory;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPKeyRingGenerator;
@@ -29,12 +39,18 @@ import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
 
 public class GPGKeyGenerator {
 
+    // Need to set to a fixed creation date for the gpg keys to be deterministic.
+    private static final Date DETERMINISTIC_CREATED_DATE = Date.from(Instant.parse("2010-01-01T00:00:00.000Z"));
+
     private PGPKeyRingGenerator createKeyRingGenerator(String userId, String password, int keySize, SecureRandom random) {
-        try {
-            final RSAKeyPairGenerator keyPairGenerator = new RSAKeyPairGenerator();
-            keyPairGenerator.init(new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), random, keySize, 12));
+        final RSAKeyPairGenerator keyPairGenerator = new RSAKeyPairGenerator();
+        keyPairGenerator.init(new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), random, keySize, 12));
+        return createKeyRingGenerator(userId, password, keyPairGenerator.generateKeyPair());
+    }
 
-            final BcPGPKeyPair generalKeyPair = new BcPGPKeyPair(PGPPublicKey.RSA_GENERAL, keyPairGenerator.generateKeyPair(), new Date());
+    private PGPKeyRingGenerator createKeyRingGenerator(String userId, String password, AsymmetricCipherKeyPair rsaKeyPair) {
+        try {
+            final BcPGPKeyPair generalKeyPair = new BcPGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKeyPair, new Date());
 
             return new PGPKeyRingGenerator(
                     PGPPublicKey.RSA_GENERAL,
@@ -48,6 +64,44 @@ public class GPGKeyGenerator {
         }
     }
 
+    //EdDSA primary key for signing and certifying, with an X25519 subkey for encryption as GnuPG does for ed25519
+    private PGPKeyRingGenerator createEd25519KeyRingGenerator(String userId, String password, SecureRandom random, Date createdDate) {
+        try {
+            final Ed25519KeyPairGenerator signingKeyPairGenerator = new Ed25519KeyPairGenerator();
+            signingKeyPairGenerator.init(new Ed25519KeyGenerationParameters(random));
+            AsymmetricCipherKeyPair signingKey;
+            do {
+                signingKey = signingKeyPairGenerator.generateKeyPair();
+                //bouncycastle keeps the secret as an MPI and drops a leading zero byte, the key then can't be read back to sign with
+            } while (((Ed25519PrivateKeyParameters) signingKey.getPrivate()).getEncoded()[0] == 0);
+            final BcPGPKeyPair signingKeyPair = new BcPGPKeyPair(PGPPublicKey.EDDSA, signingKey, createdDate);
+
+            final X25519KeyPairGenerator encryptionKeyPairGenerator = new X25519KeyPairGenerator();
+            encryptionKeyPairGenerator.init(new X25519KeyGenerationParameters(random));
+            final BcPGPKeyPair encryptionKeyPair = new BcPGPKeyPair(PGPPublicKey.ECDH, encryptionKeyPairGenerator.generateKeyPair(), createdDate);
+
+            final PGPSignatureSubpacketGenerator signingSubpacketGenerator = new PGPSignatureSubpacketGenerator();
+            signingSubpacketGenerator.setKeyExpirationTime(true, 0);
+            signingSubpacketGenerator.setKeyFlags(false, KeyFlags.SIGN_DATA | KeyFlags.CERTIFY_OTHER);
+
+            final PGPSignatureSubpacketGenerator encryptionSubpacketGenerator = new PGPSignatureSubpacketGenerator();
+            encryptionSubpacketGenerator.setKeyExpirationTime(true, 0);
+            encryptionSubpacketGenerator.setKeyFlags(false, KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE);
+
+            final PGPKeyRingGenerator keyRingGenerator = new PGPKeyRingGenerator(
+                    PGPSignature.POSITIVE_CERTIFICATION,
+                    signingKeyPair,
+                    userId,
+                    new BcPGPDigestCalculatorProvider().get(HashAlgorithmTags.SHA1), signingSubpacketGenerator.generate(),
+                    null, new BcPGPContentSignerBuilder(PGPPublicKey.EDDSA, HashAlgorithmTags.SHA256),
+                    new BcPBESecretKeyEncryptorBuilder(SymmetricKeyAlgorithmTags.AES_256).build(password.toCharArray()));
+            keyRingGenerator.addSubKey(encryptionKeyPair, encryptionSubpacketGenerator.generate(), null);
+            return keyRingGenerator;
+        } catch (PGPException e) {
+            throw new RuntimeException("Error creating ed25519 PGPKeyRingGenerator", e);
+        }
+    }
+
     private PGPSignatureSubpacketGenerator generateGeneralSubpacketGenerator() {
         final PGPSignatureSubpacketGenerator subpacketGenerator = new PGPSignatureSubpacketGenerator();
         subpacketGenerator.setKeyExpirationTime(true, 0);
@@ -61,9 +115,30 @@ public class GPGKeyGenerator {
         return getGPGKeyPair(secretKeyRing);
     }
 
+    //builds the GPG key from an already generated RSA key pair, eg. one taken from a KeyPairPool
+    public GPGKeyPair generateKeyPair(String userId, String password, KeyPair rsaKeyPair) {
+        try {
+            final AsymmetricCipherKeyPair keyPair = new AsymmetricCipherKeyPair(
+                    PublicKeyFactory.createKey(rsaKeyPair.getPublic().getEncoded()),
+                    PrivateKeyFactory.createKey(rsaKeyPair.getPrivate().getEncoded()));
+            final PGPSecretKeyRing secretKeyRing = createKeyRingGenerator(userId, password, keyPair).generateSecretKeyRing();
+            return getGPGKeyPair(secretKeyRing);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading RSA key pair", e);
+        }
+    }
+
+    public GPGKeyPair generateEd25519KeyPair(String userId, String password, SecureRandom random) {
+        return getGPGKeyPair(createEd25519KeyRingGenerator(userId, password, random, new Date()));
+    }
+
+    //same keys for the same random seed, the fixed creation date keeps the fingerprint stable too
+    public GPGKeyPair generateDeterministicEd25519KeyPair(String userId, String password, SecureRandom random) {
+        return getGPGKeyPair(createEd25519KeyRingGenerator(userId, password, random, DETERMINISTIC_CREATED_DATE));
+    }
+
     public GPGKeyPair generateDeterministicKeyPair(String userId, String password, byte[] rsaPublicKey, byte[] rsaPrivateKey) {
-        // Need to set to a fixed creation date for the gpg keys to be deterministic.
-        final Date createdDate = Date.from(Instant.parse("2010-01-01T00:00:00.000Z"));
+        final Date createdDate = DETERMINISTIC_CREATED_DATE;
 
         final JcaPGPKeyConverter converter = new JcaPGPKeyConverter();
         converter.setProvider("BC");
@@ -106,6 +181,12 @@ public class GPGKeyGenerator {
         }
     }
 
+    //exports the whole ring so subkeys are included
+    private GPGKeyPair getGPGKeyPair(PGPKeyRingGenerator keyRingGenerator) {
+        return new GPGKeyPair(GPGKeyUtils.getArmoredGPGPublicKeyRing(keyRingGenerator.generatePublicKeyRing()),
+                GPGKeyUtils.getArmoredGPGPrivateKeyRing(keyRingGenerator.generateSecretKeyRing()));
+    }
+
     private GPGKeyPair getGPGKeyPair(PGPSecretKeyRing secretKeyRing) {
         PGPSecretKey secretKey = secretKeyRing.getSecretKey();
         return new GPGKeyPair(GPGKeyUtils.getArmoredGPGPublicKey(secretKey), GPGKeyUtils.getArmoredGPGPrivateKey(secretKey));
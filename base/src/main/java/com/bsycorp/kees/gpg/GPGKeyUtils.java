@@ -10,7 +10,9 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
 import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
 
 final class GPGKeyUtils {
 
@@ -41,6 +43,30 @@ final class GPGKeyUtils {
         }
     }
 
+    static byte[] getArmoredGPGPrivateKeyRing(PGPSecretKeyRing secretKeyRing) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ArmoredOutputStream armored = new ArmoredOutputStream(out);
+            secretKeyRing.encode(armored);
+            armored.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error getting armored GPG private key ring");
+        }
+    }
+
+    static byte[] getArmoredGPGPublicKeyRing(PGPPublicKeyRing publicKeyRing) {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ArmoredOutputStream armoredOutputStream = new ArmoredOutputStream(os);
+            publicKeyRing.encode(armoredOutputStream);
+            armoredOutputStream.close();
+            return os.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error getting armored GPG public key ring");
+        }
+    }
+
     /**
      * Constructs a PublicKey object from an RSA public key byte array.
      *
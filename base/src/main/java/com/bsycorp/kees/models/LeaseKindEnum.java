@@ -1,5 +1,7 @@
 package com.bsycorp.kees.models;
 
 public enum LeaseKindEnum {
-    INDEX
+    INDEX,
+    //statefulset pods prefer rangeStart + their ordinal, falling back to INDEX behaviour if that is taken
+    ORDINAL
 }
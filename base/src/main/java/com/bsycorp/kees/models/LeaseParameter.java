@@ -76,4 +76,23 @@ public class LeaseParameter extends Parameter {
         if (storagePrefix.endsWith("/")) storagePrefix = storagePrefix.substring(0, storagePrefix.length() - 1);
         return String.format("%s/leases/%s", storagePrefix, getStorageSuffix());
     }
+
+    //statefulset pods are named <set>-<ordinal>, use the ordinal to pick an index so restarted pods get back the same lease
+    public Integer getPreferredIndex(String podName) {
+        if (kind != LeaseKindEnum.ORDINAL || podName == null) {
+            return null;
+        }
+        String ordinal = podName.substring(podName.lastIndexOf("-") + 1);
+        if (ordinal.isEmpty() || ordinal.length() > 9 || !ordinal.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        int index = rangeStart + Integer.parseInt(ordinal);
+        return index <= rangeEnd ? index : null;
+    }
+
+    //path of the item pointing from a lease holder back to its lease, so a holders lease can be found without a scan
+    public String getHolderStorageFullPath(String storagePrefix, String holder) {
+        if (storagePrefix.endsWith("/")) storagePrefix = storagePrefix.substring(0, storagePrefix.length() - 1);
+        return String.format("%s/lease-holders/%s/%s", storagePrefix, getStorageSuffix(), holder);
+    }
 }
@@ -1,5 +1,6 @@
 package com.bsycorp.kees.models;
 
+import com.bsycorp.kees.data.PasswordGenerator;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Properties;
@@ -14,6 +15,8 @@ public class SecretParameter extends Parameter {
     private String localValue;
     private Properties rawInput;
     private String userId;
+    private String algorithm;
+    private String alphabet;
 
     public SecretParameter(String annotationName, String annotationValue) throws IOException {
         setName(annotationName);
@@ -27,9 +30,16 @@ public class SecretParameter extends Parameter {
         setType(rawInput, SecretTypeEnum.valueOf(rawInput.getProperty("type")));
         if (rawInput.getProperty("size") != null) {
             setSize(rawInput, Integer.parseInt(rawInput.getProperty("size")));
+        } else if (type == SecretTypeEnum.ED25519 || type == SecretTypeEnum.X25519
+                || (type == SecretTypeEnum.GPG && "ed25519".equalsIgnoreCase(rawInput.getProperty("algo")))) {
+            //curve25519 keys only come in one size
+            size = 256;
         } else if (getKind() == SecretKindEnum.DYNAMIC) {
             throw new RuntimeException("Size is required for dynamic secrets");
         }
+        if (type == SecretTypeEnum.PASSWORD) {
+            setAlphabet(rawInput, rawInput.getProperty("alphabet"));
+        }
         setStorageKey(rawInput, rawInput.getProperty("storageKey"));
         setLocalValue(rawInput, rawInput.getProperty("localModeValue"));
         if (type == SecretTypeEnum.GPG) {
@@ -40,6 +50,7 @@ public class SecretParameter extends Parameter {
             if (!Pattern.compile(".+<.+>").matcher(userId).matches()) {
                 throw new RuntimeException("userId must be of the form \"userId<email>\"");
             }
+            setAlgorithm(rawInput, rawInput.getProperty("algo"));
         }
     }
 
@@ -67,6 +78,30 @@ public class SecretParameter extends Parameter {
         return userId;
     }
 
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(Properties properties, String algorithm) {
+        //rsa unless asked for otherwise, existing GPG secrets don't specify an algo
+        String value = algorithm != null ? algorithm.trim().toLowerCase() : "rsa";
+        if (!("rsa".equals(value) || "ed25519".equals(value))) {
+            throw new RuntimeException("Invalid algo for GPG type: " + algorithm);
+        }
+        this.algorithm = value;
+    }
+
+    public String getAlphabet() {
+        return alphabet;
+    }
+
+    public void setAlphabet(Properties properties, String alphabet) {
+        String value = alphabet != null ? alphabet.trim().toLowerCase() : PasswordGenerator.DEFAULT_ALPHABET;
+        //throws for unknown alphabets
+        PasswordGenerator.forAlphabet(value);
+        this.alphabet = value;
+    }
+
     public int getSize() {
         return size;
     }
@@ -74,6 +109,10 @@ public class SecretParameter extends Parameter {
     public void setSize(Properties properties, int size) {
         if ("RSA".equals(properties.get("type")) && !(size == 2048 || size == 4096)) {
             throw new RuntimeException("Invalid size for RSA type: " + size);
+        } else if ("EC".equals(properties.get("type")) && !(size == 256 || size == 384)) {
+            throw new RuntimeException("Invalid size for EC type: " + size);
+        } else if (("ED25519".equals(properties.get("type")) || "X25519".equals(properties.get("type"))) && size != 256) {
+            throw new RuntimeException("Invalid size for " + properties.get("type") + " type: " + size);
         } else if (!(size > 0 && size <= 8192)) {
             throw new RuntimeException("Invalid size: " + size);
         }
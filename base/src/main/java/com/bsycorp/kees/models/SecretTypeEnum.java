@@ -4,5 +4,13 @@ public enum SecretTypeEnum {
     RSA,
     GPG,
     RANDOM,
-    PASSWORD
+    PASSWORD,
+    EC,
+    ED25519,
+    X25519;
+
+    //key pair types are generated once and stored as separate public/private fields
+    public boolean isPaired() {
+        return this == RSA || this == GPG || this == EC || this == ED25519 || this == X25519;
+    }
 }
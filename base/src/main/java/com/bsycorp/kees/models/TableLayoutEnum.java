@@ -0,0 +1,10 @@
+package com.bsycorp.kees.models;
+
+public enum TableLayoutEnum {
+    //single secretName hash key, listing by prefix needs a scan
+    FLAT,
+    //secretGroup hash key and secretName range key, listing by prefix is a query on one partition
+    PARTITIONED,
+    //writes go to the partitioned table, reads fall back to the flat table while items are migrated
+    MIGRATING
+}
@@ -1,52 +1,126 @@
 package com.bsycorp.kees.storage;
 
 import com.bsycorp.kees.Utils;
+import com.bsycorp.kees.models.LeaseParameter;
 import com.bsycorp.kees.models.Parameter;
+import com.bsycorp.kees.models.ResolvedLeaseParameter;
+import com.bsycorp.kees.models.TableLayoutEnum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Put;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class DynamoDBStorageProvider implements StorageProvider {
 
     private static final Logger LOG = LoggerFactory.getLogger(DynamoDBStorageProvider.class);
+    //max keys allowed in a single BatchGetItem request
+    private static final int BATCH_GET_LIMIT = 100;
+    private static final int BATCH_GET_MAX_ATTEMPTS = 8;
+    private static final long BATCH_GET_BASE_DELAY_MILLIS = 25;
 
     public final String  tableName;
-    private final DynamoDbClient client = Utils.getDDBClient();
+    private final TableLayoutEnum layout;
+    private final DynamoDbClient client;
+    //leases written before holder items existed can only be found by scanning, turn off once backfilled
+    private final boolean leaseHolderScanFallback;
+    //number of segments to split scans into, each scanned in parallel
+    private final int scanSegments;
+    private ExecutorService scanExecutorService;
+    private final AtomicLong scanPageCounter = new AtomicLong();
+    private final AtomicLong scannedItemCounter = new AtomicLong();
+    private final AtomicLong queryPageCounter = new AtomicLong();
 
     public DynamoDBStorageProvider(String tableName) {
+        this(tableName, TableLayoutEnum.FLAT);
+    }
+
+    public DynamoDBStorageProvider(String tableName, TableLayoutEnum layout) {
+        this(tableName, layout, Utils.getDDBClient());
+    }
+
+    DynamoDBStorageProvider(String tableName, DynamoDbClient client) {
+        this(tableName, TableLayoutEnum.FLAT, client);
+    }
+
+    DynamoDBStorageProvider(String tableName, TableLayoutEnum layout, DynamoDbClient client) {
+        if (layout == TableLayoutEnum.MIGRATING) {
+            throw new IllegalArgumentException("A single table is either FLAT or PARTITIONED, use forEnvironment() when migrating");
+        }
         this.tableName = tableName;
+        this.layout = layout;
+        this.client = client;
+        this.leaseHolderScanFallback = !"false".equals(Utils.getEnvironment().get("LEASE_HOLDER_SCAN_FALLBACK"));
+        String scanSegments = Utils.getEnvironment().get("SCAN_SEGMENTS");
+        this.scanSegments = scanSegments != null ? Integer.parseInt(scanSegments.trim()) : 1;
+    }
+
+    //picks the table(s) for the env based on TABLE_LAYOUT, the partitioned layout lives in its own table as key schemas can't be changed
+    public static StorageProvider forEnvironment(String envLabel) {
+        String layout = Utils.getEnvironment().get("TABLE_LAYOUT");
+        TableLayoutEnum tableLayout = layout != null ? TableLayoutEnum.valueOf(layout.trim().toUpperCase()) : TableLayoutEnum.FLAT;
+        LOG.info("Using DDB table layout: {}", tableLayout);
+
+        switch (tableLayout) {
+            case PARTITIONED:
+                return new DynamoDBStorageProvider(Utils.getPartitionedTableName(envLabel), TableLayoutEnum.PARTITIONED);
+            case MIGRATING:
+                return new MigratingStorageProvider(
+                        new DynamoDBStorageProvider(Utils.getPartitionedTableName(envLabel), TableLayoutEnum.PARTITIONED),
+                        new DynamoDBStorageProvider(Utils.getTableName(envLabel), TableLayoutEnum.FLAT)
+                );
+            default:
+                return new DynamoDBStorageProvider(Utils.getTableName(envLabel), TableLayoutEnum.FLAT);
+        }
     }
 
     @Override
     public void put(String storagePrefix, Parameter key, String value, Boolean ignorePutFailure) {
+        if (key instanceof ResolvedLeaseParameter) {
+            putLease(storagePrefix, (ResolvedLeaseParameter) key, value, ignorePutFailure);
+            return;
+        }
+
         String itemPath = key.getStorageFullPath(storagePrefix);
         LOG.info("Setting DDB item for key: {}", itemPath);
 
         try {
-            Map<String, AttributeValue> values = new HashMap<>();
-            values.put("secretName", AttributeValue.builder().s(itemPath).build());
-            values.put("secretValue", AttributeValue.builder().s(value).build());
             client.putItem(
                     PutItemRequest.builder()
                             .tableName(tableName)
-                            .item(values)
+                            .item(item(itemPath, value))
                             .conditionExpression("attribute_not_exists(secretName)")
                             .build()
             );
@@ -69,21 +143,67 @@ public class DynamoDBStorageProvider implements StorageProvider {
 
     }
 
+    //leases are written together with a holder item pointing back at the lease, in one transaction so they can't diverge
+    private void putLease(String storagePrefix, ResolvedLeaseParameter key, String holder, Boolean ignorePutFailure) {
+        String itemPath = key.getStorageFullPath(storagePrefix);
+        String holderPath = key.getHolderStorageFullPath(storagePrefix, holder);
+        LOG.info("Setting DDB lease item for key: {} and holder: {}", itemPath, holder);
+
+        try {
+            client.transactWriteItems(
+                    TransactWriteItemsRequest.builder()
+                            .transactItems(
+                                    TransactWriteItem.builder().put(Put.builder()
+                                            .tableName(tableName)
+                                            .item(item(itemPath, holder))
+                                            .conditionExpression("attribute_not_exists(secretName)")
+                                            .build()).build(),
+                                    TransactWriteItem.builder().put(Put.builder()
+                                            .tableName(tableName)
+                                            .item(item(holderPath, itemPath))
+                                            .build()).build()
+                            )
+                            .build()
+            );
+            //success!
+            LOG.info("Set DDB lease and holder for key: {}", itemPath);
+
+        } catch (TransactionCanceledException ce) {
+            if (!isConditionalCheckFailure(ce)) {
+                //conflicting transaction, throttling etc, the lease wasn't written so callers mustn't think it was
+                LOG.error("Error when setting lease for key: " + itemPath, ce);
+                throw new RuntimeException(ce);
+            } else if (ignorePutFailure) {
+                LOG.warn("Lease already exists for key, ignoring new value: {}", itemPath);
+            } else {
+                LOG.error("Error putting lease for key: {}", itemPath);
+                throw new RuntimeException("Failed to put key and not ignoring failures");
+            }
+
+        } catch (DynamoDbException e) {
+            //had error setting value, could be invalid or error
+            LOG.error("Error when setting lease for key: " + itemPath, e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void delete(String storagePrefix, Parameter key, String expectedValue) {
+        if (key instanceof ResolvedLeaseParameter) {
+            deleteLease(storagePrefix, (ResolvedLeaseParameter) key, expectedValue);
+            return;
+        }
+
         String itemPath = key.getStorageFullPath(storagePrefix);
         LOG.info("Deleting DDB item for key: {} with expected value: {}", itemPath, expectedValue);
 
         try {
-            Map<String, AttributeValue> values = new HashMap<>();
-            values.put("secretName", AttributeValue.builder().s(itemPath).build());
-
             Map<String, AttributeValue> conditions = new HashMap<>();
             conditions.put(":value", AttributeValue.builder().s(expectedValue).build());
             client.deleteItem(
                     DeleteItemRequest.builder()
                             .tableName(tableName)
-                            .key(values)
+                            .key(key(itemPath))
                             .conditionExpression("secretValue = :value")
                             .expressionAttributeValues(conditions)
                             .build()
@@ -97,15 +217,51 @@ public class DynamoDBStorageProvider implements StorageProvider {
         }
     }
 
+    private void deleteLease(String storagePrefix, ResolvedLeaseParameter key, String holder) {
+        String itemPath = key.getStorageFullPath(storagePrefix);
+        String holderPath = key.getHolderStorageFullPath(storagePrefix, holder);
+        LOG.info("Deleting DDB lease item for key: {} with expected holder: {}", itemPath, holder);
+
+        try {
+            Map<String, AttributeValue> leaseConditions = new HashMap<>();
+            leaseConditions.put(":value", AttributeValue.builder().s(holder).build());
+            Map<String, AttributeValue> holderConditions = new HashMap<>();
+            holderConditions.put(":value", AttributeValue.builder().s(itemPath).build());
+            client.transactWriteItems(
+                    TransactWriteItemsRequest.builder()
+                            .transactItems(
+                                    TransactWriteItem.builder().delete(Delete.builder()
+                                            .tableName(tableName)
+                                            .key(key(itemPath))
+                                            .conditionExpression("secretValue = :value")
+                                            .expressionAttributeValues(leaseConditions)
+                                            .build()).build(),
+                                    //leases created before holder items existed won't have one, don't let that block the delete
+                                    TransactWriteItem.builder().delete(Delete.builder()
+                                            .tableName(tableName)
+                                            .key(key(holderPath))
+                                            .conditionExpression("attribute_not_exists(secretName) or secretValue = :value")
+                                            .expressionAttributeValues(holderConditions)
+                                            .build()).build()
+                            )
+                            .build()
+            );
+            //success!
+            LOG.info("Deleted DDB lease and holder for key: {}", itemPath);
+
+        } catch (DynamoDbException e) {
+            //had error deleting value, could be missing or already re-leased or error
+            LOG.error("Error deleting lease for key: " + itemPath, e);
+        }
+    }
+
     @Override
     public String getValueByKey(String storagePrefix, Parameter key) {
         String itemPath = key.getStorageFullPath(storagePrefix);
         LOG.info("Looking up DDB value for key: {}", itemPath);
 
         try {
-            Map<String, AttributeValue> itemKey = new HashMap<>();
-            itemKey.put("secretName", AttributeValue.builder().s(itemPath).build());
-            GetItemResponse result = client.getItem(GetItemRequest.builder().tableName(tableName).key(itemKey).build());
+            GetItemResponse result = client.getItem(GetItemRequest.builder().tableName(tableName).key(key(itemPath)).build());
             if (!result.hasItem()){
                 LOG.warn("Couldn't find item for key: {}", itemPath);
                 return null;
@@ -125,24 +281,65 @@ public class DynamoDBStorageProvider implements StorageProvider {
 
     @Override
     public String getKeyByParameterAndValue(String storagePrefix, Parameter parameter, String value) {
+        if (parameter instanceof LeaseParameter) {
+            String leaseKey = getLeaseKeyByHolder(storagePrefix, (LeaseParameter) parameter, value);
+            if (leaseKey != null || !leaseHolderScanFallback) {
+                return leaseKey;
+            }
+        }
+
+        String key = scanKeyByParameterAndValue(storagePrefix, parameter, value);
+        if (key != null && parameter instanceof LeaseParameter) {
+            //found a lease without a valid holder item, write one so the next lookup doesn't need to scan
+            putHolder(((LeaseParameter) parameter).getHolderStorageFullPath(storagePrefix, value), key, false);
+        }
+        return key;
+    }
+
+    //looks up the holder item then checks the lease it points at is still held, two reads regardless of table size
+    private String getLeaseKeyByHolder(String storagePrefix, LeaseParameter parameter, String holder) {
+        String holderPath = parameter.getHolderStorageFullPath(storagePrefix, holder);
+        LOG.info("Looking up DDB lease for holder: {}", holderPath);
+
+        try {
+            GetItemResponse holderResult = client.getItem(GetItemRequest.builder().tableName(tableName).key(key(holderPath)).consistentRead(true).build());
+            if (!holderResult.hasItem()) {
+                LOG.info("Couldn't find holder item: {}", holderPath);
+                return null;
+            }
+            String leaseKey = holderResult.item().get("secretValue").s();
+
+            GetItemResponse leaseResult = client.getItem(GetItemRequest.builder().tableName(tableName).key(key(leaseKey)).consistentRead(true).build());
+            if (!leaseResult.hasItem() || !holder.equals(leaseResult.item().get("secretValue").s())) {
+                LOG.warn("Holder item {} points at lease {} which it no longer holds", holderPath, leaseKey);
+                return null;
+            }
+            return leaseKey;
+
+        } catch (ResourceNotFoundException e) {
+            LOG.warn("Couldn't find item for holder: {}", holderPath);
+            throw new RuntimeException(e);
+
+        } catch (DynamoDbException e) {
+            //had error finding value, could be missing or invalid or error
+            LOG.error("Error when looking up lease for holder: " + holderPath, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String scanKeyByParameterAndValue(String storagePrefix, Parameter parameter, String value) {
         LOG.info("Looking up DDB keys for value: {}", value);
 
         try {
             Map<String, AttributeValue> expressionValues = new HashMap<>();
-            expressionValues.put(":storagePrefix", AttributeValue.builder().s(parameter.getStorageFullPath(storagePrefix)).build());
             expressionValues.put(":value", AttributeValue.builder().s(value).build());
-            ScanResponse result = client.scan(
-                    ScanRequest.builder()
-                            .tableName(tableName)
-                            .filterExpression("begins_with(secretName, :storagePrefix) and secretValue = :value")
-                            .expressionAttributeValues(expressionValues)
-                            .build()
-            );
-            if (!result.hasItems()){
+            List<Map<String, AttributeValue>> items = findItems(parameter.getStorageFullPath(storagePrefix),
+                    "secretValue = :value", expressionValues, "secretName", true);
+            if (items.isEmpty()){
                 LOG.warn("Couldn't find item for value: {}", value);
                 return null;
             }
-            return result.items().stream().map(i -> i.get("secretName").s()).findFirst().orElseGet(() -> null);
+            return items.get(0).get("secretName").s();
 
         } catch (ResourceNotFoundException e) {
             LOG.warn("Couldn't find item for value: {}", value);
@@ -160,20 +357,13 @@ public class DynamoDBStorageProvider implements StorageProvider {
         LOG.info("Looking up DDB keys for param: {}", parameter.getStorageFullPath(storagePrefix));
 
         try {
-            Map<String, AttributeValue> expressionValues = new HashMap<>();
-            expressionValues.put(":storagePrefix", AttributeValue.builder().s(parameter.getStorageFullPath(storagePrefix)).build());
-            ScanResponse result = client.scan(
-                    ScanRequest.builder()
-                            .tableName(tableName)
-                            .filterExpression("begins_with(secretName, :storagePrefix)")
-                            .expressionAttributeValues(expressionValues)
-                            .build()
-            );
-            if (!result.hasItems()){
+            List<Map<String, AttributeValue>> items = findItems(parameter.getStorageFullPath(storagePrefix),
+                    null, new HashMap<>(), "secretName", false);
+            if (items.isEmpty()){
                 LOG.warn("Couldn't find items for param: {}", parameter.getStorageFullPath(storagePrefix));
                 return Collections.emptyList();
             }
-            return result.items().stream().map(i -> i.get("secretName").s()).collect(Collectors.toList());
+            return items.stream().map(i -> i.get("secretName").s()).collect(Collectors.toList());
 
         } catch (ResourceNotFoundException e) {
             LOG.warn("Couldn't find item for param: {}", parameter.getStorageFullPath(storagePrefix));
@@ -186,6 +376,29 @@ public class DynamoDBStorageProvider implements StorageProvider {
         }
     }
 
+    @Override
+    public Map<String, String> getEntriesByParameter(String storagePrefix, Parameter parameter) {
+        LOG.info("Looking up DDB entries for param: {}", parameter.getStorageFullPath(storagePrefix));
+
+        try {
+            Map<String, String> entries = new HashMap<>();
+            for (Map<String, AttributeValue> item : findItems(parameter.getStorageFullPath(storagePrefix),
+                    null, new HashMap<>(), "secretName, secretValue", false)) {
+                entries.put(item.get("secretName").s(), item.get("secretValue").s());
+            }
+            return entries;
+
+        } catch (ResourceNotFoundException e) {
+            LOG.warn("Couldn't find item for param: {}", parameter.getStorageFullPath(storagePrefix));
+            return Collections.emptyMap();
+
+        } catch (DynamoDbException e) {
+            //had error finding value, could be missing or invalid or error
+            LOG.error("Error when looking up entries with param: " + parameter.getStorageFullPath(storagePrefix), e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public boolean exists(String storagePrefix, Parameter key) {
         String itemPath = key.getStorageFullPath(storagePrefix);
@@ -194,11 +407,14 @@ public class DynamoDBStorageProvider implements StorageProvider {
         try {
             Map<String, AttributeValue> eav = new HashMap<>();
             eav.put(":name", AttributeValue.builder().s(itemPath).build());
+            if (layout == TableLayoutEnum.PARTITIONED) {
+                eav.put(":group", AttributeValue.builder().s(getGroupForPath(itemPath)).build());
+            }
 
             QueryResponse result = client.query(
                     QueryRequest.builder()
                     .tableName(tableName)
-                    .keyConditionExpression("secretName =:name")
+                    .keyConditionExpression(layout == TableLayoutEnum.PARTITIONED ? "secretGroup = :group and secretName = :name" : "secretName =:name")
                     .expressionAttributeValues(eav)
                     .projectionExpression("secretName")
                     .build()
@@ -211,4 +427,291 @@ public class DynamoDBStorageProvider implements StorageProvider {
             return false;
         }
     }
+
+    @Override
+    public Map<String, String> getValuesByKeys(String storagePrefix, List<Parameter> keys) {
+        Set<String> itemPaths = getUniqueItemPaths(storagePrefix, keys);
+        LOG.info("Batch looking up DDB values for {} keys", itemPaths.size());
+
+        Map<String, String> result = new HashMap<>();
+        for (Map<String, AttributeValue> item : batchGetItems(itemPaths, "secretName, secretValue")) {
+            result.put(item.get("secretName").s(), item.get("secretValue").s());
+        }
+        if (result.size() < itemPaths.size()) {
+            LOG.warn("Couldn't find items for {} of {} keys", itemPaths.size() - result.size(), itemPaths.size());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsAll(String storagePrefix, List<Parameter> keys) {
+        Set<String> itemPaths = getUniqueItemPaths(storagePrefix, keys);
+        LOG.info("Batch checking DDB values exist for {} keys", itemPaths.size());
+        return batchGetItems(itemPaths, "secretName").size() == itemPaths.size();
+    }
+
+    private Set<String> getUniqueItemPaths(String storagePrefix, List<Parameter> keys) {
+        //duplicate keys in a single batch request are rejected by DDB, so only ask for each path once
+        Set<String> itemPaths = new LinkedHashSet<>();
+        for (Parameter key : keys) {
+            itemPaths.add(key.getStorageFullPath(storagePrefix));
+        }
+        return itemPaths;
+    }
+
+    //returns the items found for the given paths, throws if any path couldn't be read so callers never mistake a failed
+    //lookup for a missing item
+    private List<Map<String, AttributeValue>> batchGetItems(Set<String> itemPaths, String projection) {
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        List<String> paths = new ArrayList<>(itemPaths);
+
+        for (int chunkStart = 0; chunkStart < paths.size(); chunkStart += BATCH_GET_LIMIT) {
+            List<Map<String, AttributeValue>> itemKeys = new ArrayList<>();
+            for (String itemPath : paths.subList(chunkStart, Math.min(chunkStart + BATCH_GET_LIMIT, paths.size()))) {
+                itemKeys.add(key(itemPath));
+            }
+            Map<String, KeysAndAttributes> requestItems = Collections.singletonMap(tableName,
+                    KeysAndAttributes.builder().keys(itemKeys).projectionExpression(projection).build());
+
+            try {
+                int attempt = 0;
+                while (!requestItems.isEmpty()) {
+                    BatchGetItemResponse response = client.batchGetItem(BatchGetItemRequest.builder().requestItems(requestItems).build());
+                    if (response.hasResponses() && response.responses().containsKey(tableName)) {
+                        result.addAll(response.responses().get(tableName));
+                    }
+                    requestItems = response.hasUnprocessedKeys() ? response.unprocessedKeys() : Collections.emptyMap();
+
+                    //unprocessed keys are returned when throttled, back off exponentially before asking again
+                    if (!requestItems.isEmpty()) {
+                        attempt++;
+                        if (attempt >= BATCH_GET_MAX_ATTEMPTS) {
+                            LOG.error("Giving up on {} unprocessed keys after {} attempts", requestItems.get(tableName).keys().size(), attempt);
+                            throw new RuntimeException("Unable to batch look up " + requestItems.get(tableName).keys().size() + " keys after " + attempt + " attempts");
+                        }
+                        Thread.sleep(BATCH_GET_BASE_DELAY_MILLIS << (attempt - 1));
+                    }
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Interrupted while batch looking up keys");
+                throw new RuntimeException(e);
+
+            } catch (DynamoDbException e) {
+                //had error finding values, could be missing or invalid or error
+                LOG.error("Error when batch looking up keys starting with: " + paths.get(chunkStart), e);
+                throw new RuntimeException(e);
+            }
+        }
+        return result;
+    }
+
+    //write holder items for all existing leases that don't have one yet, so lease lookups no longer need to scan
+    public int backfillLeaseHolders() {
+        LOG.info("Backfilling DDB lease holder items..");
+        int backfilled = 0;
+
+        try {
+            Map<String, AttributeValue> expressionValues = new HashMap<>();
+            expressionValues.put(":leases", AttributeValue.builder().s("/leases/").build());
+            for (Map<String, AttributeValue> item : scanItems("contains(secretName, :leases)", expressionValues, "secretName, secretValue", false)) {
+                String leasePath = item.get("secretName").s();
+                String holderPath = getHolderPathForLease(leasePath, item.get("secretValue").s());
+                if (holderPath != null && putHolder(holderPath, leasePath, true)) {
+                    backfilled++;
+                }
+            }
+
+        } catch (DynamoDbException e) {
+            LOG.error("Error when backfilling lease holders", e);
+            throw new RuntimeException(e);
+        }
+
+        LOG.info("Backfilled {} DDB lease holder items", backfilled);
+        return backfilled;
+    }
+
+    //lease paths are <storagePrefix>/leases/<storageKeyPrefix>.<index>, holder paths are <storagePrefix>/lease-holders/<storageKeyPrefix>/<holder>
+    static String getHolderPathForLease(String leasePath, String holder) {
+        int leasesIndex = leasePath.lastIndexOf("/leases/");
+        int valueIndex = leasePath.lastIndexOf(".");
+        if (leasesIndex < 0 || valueIndex < leasesIndex + "/leases/".length()) {
+            return null;
+        }
+        return String.format("%s/lease-holders/%s/%s",
+                leasePath.substring(0, leasesIndex),
+                leasePath.substring(leasesIndex + "/leases/".length(), valueIndex),
+                holder);
+    }
+
+    private boolean putHolder(String holderPath, String leasePath, boolean onlyIfMissing) {
+        try {
+            client.putItem(
+                    PutItemRequest.builder()
+                            .tableName(tableName)
+                            .item(item(holderPath, leasePath))
+                            .conditionExpression(onlyIfMissing ? "attribute_not_exists(secretName)" : null)
+                            .build()
+            );
+            LOG.info("Set DDB holder item: {} for lease: {}", holderPath, leasePath);
+            return true;
+
+        } catch (ConditionalCheckFailedException ce) {
+            return false;
+
+        } catch (DynamoDbException e) {
+            //not fatal, lookups for this holder will keep falling back to a scan
+            LOG.warn("Couldn't set holder item: {}", holderPath, e);
+            return false;
+        }
+    }
+
+    //finds items whose secretName starts with the given path, with the partitioned layout that is a query on the path's group
+    private List<Map<String, AttributeValue>> findItems(String pathPrefix, String filterExpression, Map<String, AttributeValue> expressionValues,
+                                                        String projection, boolean firstOnly) {
+        Map<String, AttributeValue> values = new HashMap<>(expressionValues);
+        values.put(":pathPrefix", AttributeValue.builder().s(pathPrefix).build());
+        if (layout != TableLayoutEnum.PARTITIONED) {
+            String prefixFilter = "begins_with(secretName, :pathPrefix)";
+            return scanItems(filterExpression != null ? prefixFilter + " and " + filterExpression : prefixFilter, values, projection, firstOnly);
+        }
+
+        values.put(":group", AttributeValue.builder().s(getGroupForPath(pathPrefix)).build());
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResponse page = client.query(
+                    QueryRequest.builder()
+                            .tableName(tableName)
+                            .keyConditionExpression("secretGroup = :group and begins_with(secretName, :pathPrefix)")
+                            .filterExpression(filterExpression)
+                            .expressionAttributeValues(values)
+                            .projectionExpression(projection)
+                            .exclusiveStartKey(lastEvaluatedKey)
+                            .build()
+            );
+            queryPageCounter.incrementAndGet();
+            if (page.hasItems()) {
+                result.addAll(page.items());
+            }
+            if (firstOnly && !result.isEmpty()) {
+                break;
+            }
+            lastEvaluatedKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return result;
+    }
+
+    //items are grouped by their parent path, eg. all leases for a storage prefix share the <storagePrefix>/leases partition
+    static String getGroupForPath(String itemPath) {
+        int index = itemPath.lastIndexOf("/");
+        return index > 0 ? itemPath.substring(0, index) : itemPath;
+    }
+
+    //scans the whole table following LastEvaluatedKey, across parallel segments if configured
+    private List<Map<String, AttributeValue>> scanItems(String filterExpression, Map<String, AttributeValue> expressionValues,
+                                                        String projection, boolean firstOnly) {
+        if (scanSegments <= 1) {
+            return scanSegment(filterExpression, expressionValues, projection, firstOnly, null);
+        }
+
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> segments = new ArrayList<>();
+        for (int segment = 0; segment < scanSegments; segment++) {
+            final Integer currentSegment = segment;
+            segments.add(CompletableFuture.supplyAsync(
+                    () -> scanSegment(filterExpression, expressionValues, projection, firstOnly, currentSegment), getScanExecutorService()));
+        }
+
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<Map<String, AttributeValue>>> segment : segments) {
+                result.addAll(segment.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private List<Map<String, AttributeValue>> scanSegment(String filterExpression, Map<String, AttributeValue> expressionValues,
+                                                          String projection, boolean firstOnly, Integer segment) {
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            long start = System.currentTimeMillis();
+            ScanResponse page = client.scan(
+                    ScanRequest.builder()
+                            .tableName(tableName)
+                            .filterExpression(filterExpression)
+                            .expressionAttributeValues(expressionValues)
+                            .projectionExpression(projection)
+                            .exclusiveStartKey(lastEvaluatedKey)
+                            .segment(segment)
+                            .totalSegments(segment != null ? scanSegments : null)
+                            .build()
+            );
+            scanPageCounter.incrementAndGet();
+            scannedItemCounter.addAndGet(page.scannedCount() != null ? page.scannedCount() : 0);
+            LOG.debug("Scanned page of {} items, matched {}, segment: {}, took {}ms",
+                    page.scannedCount(), page.count(), segment, System.currentTimeMillis() - start);
+
+            if (page.hasItems()) {
+                result.addAll(page.items());
+            }
+            if (firstOnly && !result.isEmpty()) {
+                break;
+            }
+            lastEvaluatedKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return result;
+    }
+
+    private synchronized ExecutorService getScanExecutorService() {
+        if (scanExecutorService == null) {
+            scanExecutorService = Executors.newFixedThreadPool(scanSegments, r -> {
+                Thread thread = new Thread(r, "ddb-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scanExecutorService;
+    }
+
+    public AtomicLong getScanPageCounter() {
+        return scanPageCounter;
+    }
+
+    public AtomicLong getScannedItemCounter() {
+        return scannedItemCounter;
+    }
+
+    public AtomicLong getQueryPageCounter() {
+        return queryPageCounter;
+    }
+
+    private boolean isConditionalCheckFailure(TransactionCanceledException e) {
+        return e.hasCancellationReasons() && e.cancellationReasons().stream()
+                .map(CancellationReason::code)
+                .anyMatch("ConditionalCheckFailed"::equals);
+    }
+
+    private Map<String, AttributeValue> key(String itemPath) {
+        if (layout != TableLayoutEnum.PARTITIONED) {
+            return Collections.singletonMap("secretName", AttributeValue.builder().s(itemPath).build());
+        }
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put("secretGroup", AttributeValue.builder().s(getGroupForPath(itemPath)).build());
+        values.put("secretName", AttributeValue.builder().s(itemPath).build());
+        return values;
+    }
+
+    private Map<String, AttributeValue> item(String itemPath, String value) {
+        Map<String, AttributeValue> values = new HashMap<>(key(itemPath));
+        values.put("secretValue", AttributeValue.builder().s(value).build());
+        return values;
+    }
 }
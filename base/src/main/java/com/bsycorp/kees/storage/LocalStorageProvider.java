@@ -1,6 +1,7 @@
 package com.bsycorp.kees.storage;
 
 import com.bsycorp.kees.data.DeterministicDataProvider;
+import com.bsycorp.kees.models.LeaseParameter;
 import com.bsycorp.kees.models.Parameter;
 import com.bsycorp.kees.models.ResourceParameter;
 import com.bsycorp.kees.models.SecretParameter;
@@ -31,15 +32,13 @@ public class LocalStorageProvider implements StorageProvider {
                 return secretParameter.getLocalValue();
 
             } else if (secretParameter.getType() == SecretTypeEnum.GPG && secretParameter.getFieldName().equals("password")) {
-                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId())[2];
-            } else if ((secretParameter.getType() == SecretTypeEnum.RSA || secretParameter.getType() == SecretTypeEnum.GPG)
-                    && secretParameter.getFieldName().equals("public")) {
-                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId())[0];
-            } else if ((secretParameter.getType() == SecretTypeEnum.RSA || secretParameter.getType() == SecretTypeEnum.GPG)
-                    && secretParameter.getFieldName().equals("private")) {
-                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId())[1];
+                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId(), secretParameter.getAlgorithm())[2];
+            } else if (secretParameter.getType().isPaired() && secretParameter.getFieldName().equals("public")) {
+                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId(), secretParameter.getAlgorithm())[0];
+            } else if (secretParameter.getType().isPaired() && secretParameter.getFieldName().equals("private")) {
+                return dataProvider.generatePairedBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId(), secretParameter.getAlgorithm())[1];
             } else {
-                return dataProvider.generateBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize());
+                return dataProvider.generateBase64Encoded(secretParameter.getType(), secretParameter.getParameterName(), secretParameter.getSize(), secretParameter.getAlphabet());
             }
 
         } else if (parameter instanceof ResourceParameter) {
@@ -50,6 +49,10 @@ public class LocalStorageProvider implements StorageProvider {
                 throw new RuntimeException("Can't generate value for resource parameter locally");
             }
 
+        } else if (parameter instanceof LeaseParameter) {
+            //local leases are derived from the holder, see getKeyByParameterAndValue()
+            return null;
+
         } else {
             throw new RuntimeException("Unsupported parameter type: " + parameter.getClass());
         }
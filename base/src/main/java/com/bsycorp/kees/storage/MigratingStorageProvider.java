@@ -0,0 +1,103 @@
+package com.bsycorp.kees.storage;
+
+import com.bsycorp.kees.models.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//used while moving between table layouts, writes only go to the current table but reads see both
+public class MigratingStorageProvider implements StorageProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MigratingStorageProvider.class);
+
+    private final StorageProvider current;
+    private final StorageProvider previous;
+
+    public MigratingStorageProvider(StorageProvider current, StorageProvider previous) {
+        this.current = current;
+        this.previous = previous;
+    }
+
+    @Override
+    public void put(String storagePrefix, Parameter key, String value, Boolean ignorePutFailure) {
+        //the conditional put only guards the current table, so a key already in the previous table is left alone
+        if (previous.exists(storagePrefix, key)) {
+            if (!ignorePutFailure) {
+                LOG.error("Error putting value for key already in previous table: {}", key.getStorageFullPath(storagePrefix));
+                throw new RuntimeException("Failed to put key and not ignoring failures");
+            }
+            LOG.warn("Item already exists in previous table for key, ignoring new value: {}", key.getStorageFullPath(storagePrefix));
+            return;
+        }
+        current.put(storagePrefix, key, value, ignorePutFailure);
+    }
+
+    @Override
+    public void delete(String storagePrefix, Parameter key, String expectedValue) {
+        current.delete(storagePrefix, key, expectedValue);
+        previous.delete(storagePrefix, key, expectedValue);
+    }
+
+    @Override
+    public String getValueByKey(String storagePrefix, Parameter key) {
+        String value = current.getValueByKey(storagePrefix, key);
+        return value != null ? value : previous.getValueByKey(storagePrefix, key);
+    }
+
+    @Override
+    public String getKeyByParameterAndValue(String storagePrefix, Parameter parameter, String value) {
+        String key = current.getKeyByParameterAndValue(storagePrefix, parameter, value);
+        return key != null ? key : previous.getKeyByParameterAndValue(storagePrefix, parameter, value);
+    }
+
+    @Override
+    public List<String> getKeysByParameter(String storagePrefix, Parameter parameter) {
+        Set<String> keys = new LinkedHashSet<>(current.getKeysByParameter(storagePrefix, parameter));
+        keys.addAll(previous.getKeysByParameter(storagePrefix, parameter));
+        return new ArrayList<>(keys);
+    }
+
+    @Override
+    public Map<String, String> getEntriesByParameter(String storagePrefix, Parameter parameter) {
+        Map<String, String> entries = new HashMap<>(previous.getEntriesByParameter(storagePrefix, parameter));
+        entries.putAll(current.getEntriesByParameter(storagePrefix, parameter));
+        return entries;
+    }
+
+    @Override
+    public boolean exists(String storagePrefix, Parameter key) {
+        return current.exists(storagePrefix, key) || previous.exists(storagePrefix, key);
+    }
+
+    @Override
+    public Map<String, String> getValuesByKeys(String storagePrefix, List<Parameter> keys) {
+        Map<String, String> result = new HashMap<>(current.getValuesByKeys(storagePrefix, keys));
+
+        //only go to the previous table for whatever hasn't been migrated yet
+        List<Parameter> missing = new ArrayList<>();
+        for (Parameter key : keys) {
+            if (!result.containsKey(key.getStorageFullPath(storagePrefix))) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(previous.getValuesByKeys(storagePrefix, missing));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsAll(String storagePrefix, List<Parameter> keys) {
+        Set<String> itemPaths = new LinkedHashSet<>();
+        for (Parameter key : keys) {
+            itemPaths.add(key.getStorageFullPath(storagePrefix));
+        }
+        return getValuesByKeys(storagePrefix, keys).keySet().containsAll(itemPaths);
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.bsycorp.kees.storage;
 
 import com.bsycorp.kees.models.Parameter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface StorageProvider {
 
@@ -19,7 +21,52 @@ public interface StorageProvider {
     //get all keys for the given prefix and parameter
     List<String> getKeysByParameter(String storagePrefix, Parameter parameter);
 
+    //get all keys for the given prefix and parameter along with their stored values, keys deleted in between are left out
+    default Map<String, String> getEntriesByParameter(String storagePrefix, Parameter parameter) {
+        Map<String, String> result = new HashMap<>();
+        for (String key : getKeysByParameter(storagePrefix, parameter)) {
+            String value = getValueByKey(storagePrefix, new Parameter() {
+                @Override
+                public String getStorageSuffix() {
+                    return key;
+                }
+
+                @Override
+                public String getStorageFullPath(String storagePrefix) {
+                    //keys are already full paths
+                    return key;
+                }
+            });
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
     //get() returns the stored value for the given key, to support binary values all stored values are b64 encoded first
     boolean exists(String storagePrefix, Parameter key);
 
+    //get values for all the given keys, keyed by storage full path, keys without a stored value are left out of the result
+    default Map<String, String> getValuesByKeys(String storagePrefix, List<Parameter> keys) {
+        Map<String, String> result = new HashMap<>();
+        for (Parameter key : keys) {
+            String value = getValueByKey(storagePrefix, key);
+            if (value != null) {
+                result.put(key.getStorageFullPath(storagePrefix), value);
+            }
+        }
+        return result;
+    }
+
+    //returns true only if every given key exists
+    default boolean existsAll(String storagePrefix, List<Parameter> keys) {
+        for (Parameter key : keys) {
+            if (!exists(storagePrefix, key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
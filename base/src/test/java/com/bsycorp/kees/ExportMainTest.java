@@ -4,7 +4,9 @@ import static org.junit.Assert.assertEquals;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
 import java.io.File;
+import java.util.Map;
 
 public class ExportMainTest {
 
@@ -41,4 +43,17 @@ public class ExportMainTest {
         String expectedResultContent = FileUtils.readFileToString(new File(expectedResultPath), "UTF-8");
         assertEquals(expectedResultContent, outputContent);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldAddWatchLabelToPodTemplate() throws Exception {
+        File manifest = new File(this.getClass().getClassLoader().getResource("manifest.yml").getFile());
+
+        String labelled = ExportMain.addWatchLabel(manifest);
+
+        Map<String, Object> document = (Map<String, Object>) new Yaml().loadAll(labelled).iterator().next();
+        Map<String, Object> metadata = (Map<String, Object>) ((Map<String, Object>) ((Map<String, Object>) document.get("spec")).get("template")).get("metadata");
+        Map<String, Object> labels = (Map<String, Object>) metadata.get("labels");
+        assertEquals("true", labels.get("init.bsycorp.com/enabled"));
+        assertEquals("service-c", labels.get("run"));
+    }
+}
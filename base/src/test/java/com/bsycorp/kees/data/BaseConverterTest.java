@@ -0,0 +1,132 @@
+package com.bsycorp.kees.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BaseConverterTest {
+
+    private static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private final BaseConverter converter = new BaseConverter(BASE62);
+
+    @Test
+    public void shouldMatchBigIntegerConversion() {
+        Random random = new Random(42);
+        for (int length = 1; length <= 300; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            //leading zero bytes are dropped by the conversion, make sure some inputs have them
+            if (length % 7 == 0) {
+                bytes[0] = 0;
+            }
+
+            String expected = referenceEncode(bytes);
+            assertEquals(expected, converter.encode(bytes));
+            assertArrayEquals(referenceDecode(expected), converter.decode(expected));
+            assertArrayEquals(bytes, converter.decode(expected, length));
+        }
+    }
+
+    @Test
+    public void shouldHandleZero() {
+        assertEquals("0", converter.encode(new byte[]{0, 0, 0}));
+        assertEquals(0, converter.decode("0").length);
+        assertArrayEquals(new byte[]{0, 0, 0}, converter.decode("000", 3));
+    }
+
+    @Test
+    public void shouldPadToDesiredLength() {
+        assertEquals("000000000G", converter.encode(new byte[]{16}, 10));
+        assertEquals("G", converter.encode(new byte[]{16}, 1));
+    }
+
+    @Test
+    public void shouldWorkForOtherBases() {
+        BaseConverter binary = new BaseConverter("01");
+        assertEquals("100000001", binary.encode(new byte[]{1, 1}));
+        assertArrayEquals(new byte[]{1, 1}, binary.decode("100000001"));
+
+        BaseConverter hex = new BaseConverter("0123456789abcdef");
+        assertEquals("deadbeef", hex.encode(new byte[]{(byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef}));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldNotDecodeLongerThanDesiredLength() {
+        converter.decode("zzzzzz", 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDecodeInvalidCharacters() {
+        converter.decode("abc-def");
+    }
+
+    //the BigInteger conversion BaseConverter used to do
+    private static String referenceEncode(byte[] bytes) {
+        BigInteger divider = BigInteger.valueOf(BASE62.length());
+        BigInteger dividend = new BigInteger(1, bytes);
+        StringBuilder sb = new StringBuilder();
+        do {
+            BigInteger[] divideAndRemainder = dividend.divideAndRemainder(divider);
+            sb.insert(0, BASE62.charAt(divideAndRemainder[1].intValue()));
+            dividend = divideAndRemainder[0];
+        } while (dividend.signum() > 0);
+        return sb.toString();
+    }
+
+    private static byte[] referenceDecode(String value) {
+        BigInteger result = BigInteger.ZERO;
+        for (int i = 0; i < value.length(); i++) {
+            result = result.multiply(BigInteger.valueOf(BASE62.length())).add(BigInteger.valueOf(BASE62.indexOf(value.charAt(i))));
+        }
+        byte[] bytes = result.toByteArray();
+        return bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    //compares with the BigInteger conversion across input sizes, run by hand
+    @Ignore
+    @Test
+    public void benchmark() {
+        Random random = new Random();
+        for (int size : new int[]{16, 128, 1024, 8192}) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            String encoded = referenceEncode(bytes);
+            int rounds = Math.max(10, 100000 / size);
+
+            //warm up both before timing
+            for (int i = 0; i < rounds; i++) {
+                referenceDecode(referenceEncode(bytes));
+                converter.decode(converter.encode(bytes));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                referenceEncode(bytes);
+            }
+            long referenceEncodeNanos = (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                referenceDecode(encoded);
+            }
+            long referenceDecodeNanos = (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                converter.encode(bytes);
+            }
+            long encodeNanos = (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                converter.decode(encoded, size);
+            }
+            long decodeNanos = (System.nanoTime() - start) / rounds;
+
+            System.out.println(size + "B encode: BigInteger " + referenceEncodeNanos / 1000 + "us, BaseConverter " + encodeNanos / 1000 + "us"
+                    + ", decode: BigInteger " + referenceDecodeNanos / 1000 + "us, BaseConverter " + decodeNanos / 1000 + "us");
+        }
+    }
+}
@@ -46,6 +46,16 @@ public class DeterministicDataProviderTest {
         assertEquals(expectedPrivateKey, DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.RSA, "app.key.v1_private", 2048, null)[1]);
     }
 
+    @Test
+    public void shouldCreateDeterministicEllipticCurveKeys() {
+        for (SecretTypeEnum type : new SecretTypeEnum[]{SecretTypeEnum.EC, SecretTypeEnum.ED25519, SecretTypeEnum.X25519}) {
+            String[] keyPair = DATA_PROVIDER.generatePairedBase64Encoded(type, "app.key.v1_public", 256, null);
+            //public and private field lookups must resolve to the same pair
+            Assert.assertArrayEquals(keyPair, DATA_PROVIDER.generatePairedBase64Encoded(type, "app.key.v1_private", 256, null));
+            Assert.assertThat(keyPair[1], IsNot.not(IsEqual.equalTo(DATA_PROVIDER.generatePairedBase64Encoded(type, "app.key.v2_private", 256, null)[1])));
+        }
+    }
+
     /**
      * We need to test that for the same annotation parameters, the generated key can be used for encryption/decryption/signing.
      *
@@ -104,6 +114,31 @@ public class DeterministicDataProviderTest {
         Assert.assertArrayEquals(decrypted, raw);
     }
 
+    @Test
+    public void shouldCreateDeterministicEd25519GPG() throws Exception {
+        final String signerUserId = "signer<signer@email.com>";
+        final String decrypterUserId = "decrypter<decrypter@email.com>";
+        final Object[] signer = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.GPG, "app.key.signer", 256, signerUserId, "ed25519");
+        final Object[] decrypter1 = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.GPG, "app.key.decrypter", 256, decrypterUserId, "ed25519");
+        final Object[] decrypter2 = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.GPG, "app.key.decrypter", 256, decrypterUserId, "ed25519");
+
+        //fixed creation date and deterministic EdDSA signatures make the whole public key repeatable
+        Assert.assertEquals(decrypter1[0], decrypter2[0]);
+        Assert.assertEquals(decrypter1[2], decrypter2[2]);
+
+        CryptoTestUtils.EncryptionService encryptionService = new CryptoTestUtils.EncryptionService(
+                DECODER.decode((String) decrypter1[0]), DECODER.decode((String) signer[1]), DECODER.decode((String) signer[0]),
+                new String(DECODER.decode((String) signer[2])));
+        CryptoTestUtils.DecryptionService decryptionService = new CryptoTestUtils.DecryptionService(
+                new String(DECODER.decode((String) decrypter2[2])), DECODER.decode((String) decrypter2[1]), DECODER.decode((String) decrypter2[0]),
+                signerUserId, DECODER.decode((String) signer[0]));
+
+        final byte[] raw = "This is a test string".getBytes();
+        final byte[] encrypted = encryptionService.encrypt(new ByteArrayInputStream(raw), decrypterUserId, signerUserId);
+
+        Assert.assertArrayEquals(raw, decryptionService.decryptAndVerify(new ByteArrayInputStream(encrypted)));
+    }
+
     @Test
     public void shouldCreateDeterministicPassword() {
         String password = new String(DATA_PROVIDER.generateRaw(SecretTypeEnum.PASSWORD, "app.service.blah", 128));
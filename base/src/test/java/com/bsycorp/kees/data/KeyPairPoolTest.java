@@ -0,0 +1,63 @@
+package com.bsycorp.kees.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import com.bsycorp.kees.models.SecretTypeEnum;
+import org.junit.Test;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+
+public class KeyPairPoolTest {
+
+    @Test(timeout = 30000)
+    public void shouldHandOutEachKeyOnceAndRefill() throws Exception {
+        KeyPairPool pool = new KeyPairPool(2, 1);
+        try {
+            //first request for a size is a miss, it starts the refill
+            assertNull(pool.take(1024));
+            assertEquals(1, pool.getMissCounter().get());
+            waitForKeys(pool, 1024, 2);
+
+            KeyPair first = pool.take(1024);
+            KeyPair second = pool.take(1024);
+            assertNotNull(first);
+            assertNotNull(second);
+            assertNotSame(first.getPrivate(), second.getPrivate());
+            assertEquals(1024, ((RSAPublicKey) first.getPublic()).getModulus().bitLength());
+            assertEquals(2, pool.getHitCounter().get());
+
+            //taking them kicked off the refill again
+            waitForKeys(pool, 1024, 2);
+            assertEquals(4, pool.getRefillCounter().get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldBuildGPGFromPooledKey() throws Exception {
+        KeyPairPool pool = new KeyPairPool(1, 1);
+        try {
+            pool.warm(1024);
+            waitForKeys(pool, 1024, 1);
+            RandomDataProvider dataProvider = new RandomDataProvider(pool);
+
+            Object[] gpg = dataProvider.generatePairedRaw(SecretTypeEnum.GPG, "app.key.signer", 1024, "signer<signer@email.com>");
+
+            assertEquals(1, pool.getHitCounter().get());
+            assertEquals(3, gpg.length);
+            assertEquals("-----BEGIN PGP PUBLIC KEY BLOCK-----", new String((byte[]) gpg[0]).trim().split("\n")[0].trim());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void waitForKeys(KeyPairPool pool, int size, int count) throws InterruptedException {
+        while (pool.getAvailable(size) < count) {
+            Thread.sleep(50);
+        }
+    }
+}
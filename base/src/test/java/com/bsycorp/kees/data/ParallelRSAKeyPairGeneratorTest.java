@@ -0,0 +1,71 @@
+package com.bsycorp.kees.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import javax.crypto.Cipher;
+
+public class ParallelRSAKeyPairGeneratorTest {
+
+    @Test(timeout = 60000)
+    public void shouldGenerateValidKeyPair() throws Exception {
+        ParallelRSAKeyPairGenerator generator = new ParallelRSAKeyPairGenerator(4);
+        try {
+            KeyPair keyPair = generator.generateKeyPair(2048, new SecureRandom());
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) keyPair.getPrivate();
+
+            assertEquals(2048, publicKey.getModulus().bitLength());
+            assertEquals(BigInteger.valueOf(65537), publicKey.getPublicExponent());
+            assertEquals(publicKey.getModulus(), privateKey.getPrimeP().multiply(privateKey.getPrimeQ()));
+            assertTrue(privateKey.getPrimeP().isProbablePrime(100));
+            assertTrue(privateKey.getPrimeQ().isProbablePrime(100));
+
+            byte[] message = "This is a test string".getBytes();
+            Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            byte[] encrypted = cipher.doFinal(message);
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            assertArrayEquals(message, cipher.doFinal(encrypted));
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    //compares single RSA key latency with the JDK generator, run by hand on the target hardware
+    @Ignore
+    @Test
+    public void benchmark() throws Exception {
+        int size = 4096;
+        int rounds = 10;
+        SecureRandom random = new SecureRandom();
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(size, random);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++) {
+            kpg.generateKeyPair();
+        }
+        System.out.println("JDK: " + (System.currentTimeMillis() - start) / rounds + "ms per " + size + " bit key");
+
+        ParallelRSAKeyPairGenerator generator = new ParallelRSAKeyPairGenerator(Runtime.getRuntime().availableProcessors());
+        try {
+            start = System.currentTimeMillis();
+            for (int i = 0; i < rounds; i++) {
+                generator.generateKeyPair(size, random);
+            }
+            System.out.println("Parallel(" + generator.getParallelism() + "): " + (System.currentTimeMillis() - start) / rounds + "ms per " + size + " bit key");
+        } finally {
+            generator.shutdown();
+        }
+    }
+}
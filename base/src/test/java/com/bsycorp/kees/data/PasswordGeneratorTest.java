@@ -0,0 +1,94 @@
+package com.bsycorp.kees.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.bsycorp.kees.models.SecretTypeEnum;
+import org.junit.Ignore;
+import org.junit.Test;
+import java.security.SecureRandom;
+
+public class PasswordGeneratorTest {
+
+    @Test
+    public void shouldOnlyUseAlphabetCharacters() {
+        for (String name : PasswordGenerator.getAlphabetNames()) {
+            PasswordGenerator generator = PasswordGenerator.forAlphabet(name);
+            String password = generator.generate(1024, new SecureRandom());
+
+            assertEquals(1024, password.length());
+            String alphabet = generator.getAlphabet();
+            for (char c : password.toCharArray()) {
+                assertTrue(name + " doesn't contain " + c, alphabet.indexOf(c) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void shouldDrawCharactersUniformly() {
+        PasswordGenerator generator = PasswordGenerator.forAlphabet("base62");
+        int length = 62 * 2000;
+        int[] counts = new int[128];
+        for (char c : generator.generate(length, new SecureRandom()).toCharArray()) {
+            counts[c]++;
+        }
+
+        //chi-squared over 61 degrees of freedom, 120 is far beyond the 99.99th percentile
+        double expected = length / 62.0;
+        double chiSquared = 0;
+        for (char c : generator.getAlphabet().toCharArray()) {
+            chiSquared += Math.pow(counts[c] - expected, 2) / expected;
+        }
+        assertTrue("chi-squared was " + chiSquared, chiSquared < 120);
+    }
+
+    @Test
+    public void shouldBeDeterministicForSeededRandom() {
+        InsecureRandom first = new InsecureRandom();
+        first.setSeed(42);
+        InsecureRandom second = new InsecureRandom();
+        second.setSeed(42);
+
+        PasswordGenerator generator = PasswordGenerator.forAlphabet("symbols");
+        assertEquals(generator.generate(32, first), generator.generate(32, second));
+    }
+
+    @Test
+    public void shouldKeepLegacyDeterministicPasswords() {
+        DataProvider dataProvider = new DeterministicDataProvider();
+        assertEquals("8ekD64eU9hDqA5kz", new String(dataProvider.generateRaw(SecretTypeEnum.PASSWORD, "app.service.blah", 128)));
+        assertEquals("8ekD64eU9hDqA5kz", new String(dataProvider.generateRaw(SecretTypeEnum.PASSWORD, "app.service.blah", 128, "base62")));
+        assertEquals(16, dataProvider.generateRaw(SecretTypeEnum.PASSWORD, "app.service.blah", 128, "hex").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownAlphabet() {
+        PasswordGenerator.forAlphabet("emoji");
+    }
+
+    //compares the old BigInteger base62 conversion with the generator, run by hand
+    @Ignore
+    @Test
+    public void benchmark() {
+        BaseConverter base62Converter = new BaseConverter("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+        PasswordGenerator generator = PasswordGenerator.forAlphabet("base62");
+        SecureRandom random = new SecureRandom();
+
+        for (int size : new int[]{128, 1024, 8192}) {
+            int rounds = 200;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                byte[] bytes = new byte[size];
+                random.nextBytes(bytes);
+                base62Converter.encode(bytes).substring(0, size / 8);
+            }
+            System.out.println("BaseConverter: " + (System.nanoTime() - start) / rounds / 1000 + "us per " + size + " size password");
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                generator.generate(size / 8, random);
+            }
+            System.out.println("PasswordGenerator: " + (System.nanoTime() - start) / rounds / 1000 + "us per " + size + " size password");
+        }
+    }
+}
@@ -2,7 +2,13 @@ package com.bsycorp.kees.data;
 
 import com.bsycorp.kees.models.SecretTypeEnum;
 import java.io.ByteArrayInputStream;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
+import javax.crypto.KeyAgreement;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -44,6 +50,26 @@ public class RandomDataProviderTest {
         Assert.assertArrayEquals(result, raw);
     }
 
+    @Test
+    public void shouldCreateRandomEd25519GPG() throws Exception {
+        final String signerUserId = "signer<signer@email.com>";
+        final String decrypterUserId = "decrypter<decrypter@email.com>";
+        final Object[] signer = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.GPG, "app.key.signer", 256, signerUserId, "ed25519");
+        final Object[] decrypter = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.GPG, "app.key.decrypter", 256, decrypterUserId, "ed25519");
+
+        CryptoTestUtils.EncryptionService encryptionService = new CryptoTestUtils.EncryptionService(
+                DECODER.decode((String) decrypter[0]), DECODER.decode((String) signer[1]), DECODER.decode((String) signer[0]),
+                new String(DECODER.decode((String) signer[2])));
+        CryptoTestUtils.DecryptionService decryptionService = new CryptoTestUtils.DecryptionService(
+                new String(DECODER.decode((String) decrypter[2])), DECODER.decode((String) decrypter[1]), DECODER.decode((String) decrypter[0]),
+                signerUserId, DECODER.decode((String) signer[0]));
+
+        final byte[] raw = "This is a test string".getBytes();
+        byte[] encrypted = encryptionService.encrypt(new ByteArrayInputStream(raw), decrypterUserId, signerUserId);
+
+        Assert.assertArrayEquals(raw, decryptionService.decryptAndVerify(new ByteArrayInputStream(encrypted)));
+    }
+
     @Test
     public void shouldCreateDeterministicPassword() throws Exception {
         String password1 = new String(DATA_PROVIDER.generateRaw(SecretTypeEnum.PASSWORD, "app.service.blah", 128));
@@ -57,4 +83,46 @@ public class RandomDataProviderTest {
         String encodedRandom2 = new String(DATA_PROVIDER.generateBase64Encoded(SecretTypeEnum.RANDOM, "app.service.blah", 288));
         assertNotEquals(encodedRandom1, encodedRandom2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCreateRandomECThatSigns() throws Exception {
+        String[] keyPair = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.EC, "app.key.signer", 256, null);
+        assertSigns("SHA256withECDSA", KeyFactory.getInstance("EC"), keyPair);
+        assertNotEquals(keyPair[1], DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.EC, "app.key.signer", 256, null)[1]);
+    }
+
+    @Test
+    public void shouldCreateRandomED25519ThatSigns() throws Exception {
+        String[] keyPair = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.ED25519, "app.key.signer", 256, null);
+        assertSigns("Ed25519", KeyFactory.getInstance("Ed25519", new BouncyCastleProvider()), keyPair);
+    }
+
+    @Test
+    public void shouldCreateRandomX25519ThatAgrees() throws Exception {
+        KeyFactory keyFactory = KeyFactory.getInstance("X25519", new BouncyCastleProvider());
+        String[] first = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.X25519, "app.key.first", 256, null);
+        String[] second = DATA_PROVIDER.generatePairedBase64Encoded(SecretTypeEnum.X25519, "app.key.second", 256, null);
+
+        Assert.assertArrayEquals(agree(keyFactory, first[1], second[0]), agree(keyFactory, second[1], first[0]));
+    }
+
+    private void assertSigns(String algorithm, KeyFactory keyFactory, String[] keyPair) throws Exception {
+        final byte[] raw = "This is a test string".getBytes();
+        Signature signer = Signature.getInstance(algorithm, new BouncyCastleProvider());
+        signer.initSign(keyFactory.generatePrivate(new PKCS8EncodedKeySpec(DECODER.decode(keyPair[1]))));
+        signer.update(raw);
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance(algorithm, new BouncyCastleProvider());
+        verifier.initVerify(keyFactory.generatePublic(new X509EncodedKeySpec(DECODER.decode(keyPair[0]))));
+        verifier.update(raw);
+        Assert.assertTrue(verifier.verify(signature));
+    }
+
+    private byte[] agree(KeyFactory keyFactory, String privateKey, String publicKey) throws Exception {
+        KeyAgreement agreement = KeyAgreement.getInstance("X25519", new BouncyCastleProvider());
+        agreement.init(keyFactory.generatePrivate(new PKCS8EncodedKeySpec(DECODER.decode(privateKey))));
+        agreement.doPhase(keyFactory.generatePublic(new X509EncodedKeySpec(DECODER.decode(publicKey))), true);
+        return agreement.generateSecret();
+    }
+}
@@ -0,0 +1,35 @@
+package com.bsycorp.kees.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import java.io.IOException;
+
+public class LeaseParameterTest {
+
+    @Test
+    public void shouldGiveCorrectPath() throws IOException {
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+        assertEquals("/storage/prefix/leases/snowflake", parameter.getStorageFullPath("/storage/prefix/"));
+        assertEquals("/storage/prefix/leases/snowflake.3", new ResolvedLeaseParameter(parameter, "3").getStorageFullPath("/storage/prefix/"));
+    }
+
+    @Test
+    public void shouldGivePreferredIndexFromOrdinal() throws IOException {
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=ORDINAL,storageKeyPrefix=snowflake,rangeStart=100,rangeEnd=110");
+        assertEquals(Integer.valueOf(100), parameter.getPreferredIndex("web-0"));
+        assertEquals(Integer.valueOf(107), parameter.getPreferredIndex("my-web-7"));
+        assertNull(parameter.getPreferredIndex("web-11"));
+        assertNull(parameter.getPreferredIndex("web-5d8f7c9b6-x2kqp"));
+        assertNull(parameter.getPreferredIndex("web-"));
+        //copies keep the kind
+        assertEquals(Integer.valueOf(102), new ResolvedLeaseParameter(parameter, "1").getPreferredIndex("web-2"));
+    }
+
+    @Test
+    public void shouldNotGivePreferredIndexForIndexKind() throws IOException {
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+        assertNull(parameter.getPreferredIndex("web-0"));
+    }
+}
@@ -92,6 +92,66 @@ public class SecretParameterTest {
         SecretParameter parameter = new SecretParameter("secret.bsycorp.com/service-a.api-key", "kind=DYNAMIC,type=RSA,size=12048");
     }
 
+    @Test
+    public void shouldDefaultGPGToRSA() throws Exception {
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/service-a.api-key", "kind=DYNAMIC,type=GPG,size=4096,userId=aaaa<aaaa@email.com>");
+
+        assertEquals("rsa", parameter.getAlgorithm());
+    }
+
+    @Test
+    public void shouldParseDynamicEd25519GPGAnnotationWithoutSize() throws Exception {
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/service-a.api-key", "kind=DYNAMIC,type=GPG,algo=ed25519,userId=aaaa<aaaa@email.com>");
+
+        assertEquals("ed25519", parameter.getAlgorithm());
+        assertEquals(256, parameter.getSize());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldNotParseUnknownGPGAlgo() throws Exception {
+        new SecretParameter("secret.bsycorp.com/service-a.api-key", "kind=DYNAMIC,type=GPG,size=4096,algo=dsa,userId=aaaa<aaaa@email.com>");
+    }
+
+    @Test
+    public void shouldParseDynamicPasswordAlphabet() throws Exception {
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/app.db", "kind=DYNAMIC,type=PASSWORD,size=256,alphabet=symbols");
+
+        assertEquals("symbols", parameter.getAlphabet());
+        assertEquals("base62", new SecretParameter("secret.bsycorp.com/app.db", "kind=DYNAMIC,type=PASSWORD,size=256").getAlphabet());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldNotParseUnknownPasswordAlphabet() throws Exception {
+        new SecretParameter("secret.bsycorp.com/app.db", "kind=DYNAMIC,type=PASSWORD,size=256,alphabet=emoji");
+    }
+
+    //EC
+    @Test
+    public void shouldParseDynamicEC384Annotation() throws Exception {
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/service-a.signing-key", "kind=DYNAMIC,type=EC,size=384");
+
+        assertEquals("EC", parameter.getType().name());
+        assertEquals(384, parameter.getSize());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldNotParseDynamicEC521Annotation() throws Exception {
+        new SecretParameter("secret.bsycorp.com/service-a.signing-key", "kind=DYNAMIC,type=EC,size=521");
+    }
+
+    @Test
+    public void shouldParseDynamicED25519AnnotationWithoutSize() throws Exception {
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/service-a.signing-key", "kind=DYNAMIC,type=ED25519");
+
+        assertEquals("ED25519", parameter.getType().name());
+        assertEquals(256, parameter.getSize());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldNotParseDynamicX25519512Annotation() throws Exception {
+        new SecretParameter("secret.bsycorp.com/service-a.agreement-key", "kind=DYNAMIC,type=X25519,size=512");
+    }
+
     //REFERENCE
     @Test
     public void shouldParseReferencePasswordAnnotation() throws Exception {
@@ -1,12 +1,49 @@
 package com.bsycorp.kees.storage;
 
+import com.bsycorp.kees.Utils;
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.Parameter;
+import com.bsycorp.kees.models.ResolvedLeaseParameter;
 import com.bsycorp.kees.models.SecretParameter;
+import com.bsycorp.kees.models.TableLayoutEnum;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DynamoDBStorageProviderTest {
 
@@ -35,4 +72,303 @@ public class DynamoDBStorageProviderTest {
         System.out.println("Get 2 Parameter: " + parameter.getStorageFullPath("test") + " - '" + getResult + "'");
         assertEquals(null, getResult);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldBatchGetValuesInChunksAndRetryUnprocessedKeys() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+
+        List<Parameter> parameters = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            parameters.add(new SecretParameter("secret.bsycorp.com/key" + i, "kind=DYNAMIC,type=RANDOM,size=128"));
+        }
+        //duplicate paths should only be asked for once
+        parameters.add(new SecretParameter("secret.bsycorp.com/key0", "kind=DYNAMIC,type=RANDOM,size=128"));
+
+        when(client.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(
+                //first chunk, key1 is throttled
+                response(items(0, 100, 1), Collections.singletonList(1)),
+                //retry of key1
+                response(items(1, 2, -1), Collections.emptyList()),
+                //second chunk
+                response(items(100, 150, -1), Collections.emptyList())
+        );
+
+        Map<String, String> result = provider.getValuesByKeys("test", parameters);
+
+        ArgumentCaptor<BatchGetItemRequest> captor = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(client, times(3)).batchGetItem(captor.capture());
+        assertEquals(100, captor.getAllValues().get(0).requestItems().get("test-table").keys().size());
+        assertEquals(1, captor.getAllValues().get(1).requestItems().get("test-table").keys().size());
+        assertEquals(50, captor.getAllValues().get(2).requestItems().get("test-table").keys().size());
+        assertEquals(150, result.size());
+        assertEquals("value1", result.get("test/key1"));
+        assertEquals("value149", result.get("test/key149"));
+    }
+
+    @Test
+    public void shouldOnlyExistIfAllItemsFound() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+
+        List<Parameter> parameters = new ArrayList<>();
+        parameters.add(new SecretParameter("secret.bsycorp.com/key0", "kind=DYNAMIC,type=RANDOM,size=128"));
+        parameters.add(new SecretParameter("secret.bsycorp.com/key1", "kind=DYNAMIC,type=RANDOM,size=128"));
+
+        when(client.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(
+                response(items(0, 2, -1), Collections.emptyList()),
+                response(items(0, 1, -1), Collections.emptyList())
+        );
+
+        assertTrue(provider.existsAll("test", parameters));
+        assertFalse(provider.existsAll("test", parameters));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldFailBatchGetRatherThanReturnPartialResult() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+
+        List<Parameter> parameters = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            parameters.add(new SecretParameter("secret.bsycorp.com/key" + i, "kind=DYNAMIC,type=RANDOM,size=128"));
+        }
+
+        //first chunk is found, second chunk errors
+        when(client.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(response(items(0, 100, -1), Collections.emptyList()))
+                .thenThrow(DynamoDbException.builder().message("throttled").build());
+
+        provider.getValuesByKeys("test", parameters);
+    }
+
+    @Test
+    public void shouldPutLeaseWithHolderItem() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        provider.put("test", new ResolvedLeaseParameter(parameter, "3"), "pod-1", false);
+
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(client).transactWriteItems(captor.capture());
+        assertEquals("test/leases/snowflake.3", captor.getValue().transactItems().get(0).put().item().get("secretName").s());
+        assertEquals("pod-1", captor.getValue().transactItems().get(0).put().item().get("secretValue").s());
+        assertEquals("test/lease-holders/snowflake/pod-1", captor.getValue().transactItems().get(1).put().item().get("secretName").s());
+        assertEquals("test/leases/snowflake.3", captor.getValue().transactItems().get(1).put().item().get("secretValue").s());
+    }
+
+    @Test
+    public void shouldOnlyIgnoreConditionalLeaseFailures() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(client.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(
+                cancelled("ConditionalCheckFailed"),
+                cancelled("TransactionConflict"),
+                DynamoDbException.builder().message("throttled").build()
+        );
+
+        provider.put("test", new ResolvedLeaseParameter(parameter, "3"), "pod-1", true);
+        for (int i = 0; i < 2; i++) {
+            try {
+                provider.put("test", new ResolvedLeaseParameter(parameter, "3"), "pod-1", true);
+                fail("Expected put to fail");
+            } catch (RuntimeException e) {
+                //expected, the lease wasn't written
+            }
+        }
+    }
+
+    private TransactionCanceledException cancelled(String code) {
+        return TransactionCanceledException.builder()
+                .cancellationReasons(CancellationReason.builder().code(code).build(), CancellationReason.builder().code("None").build())
+                .build();
+    }
+
+    @Test
+    public void shouldFindLeaseByHolderWithoutScanning() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(client.getItem(any(GetItemRequest.class))).thenReturn(
+                GetItemResponse.builder().item(item("test/lease-holders/snowflake/pod-1", "test/leases/snowflake.3")).build(),
+                GetItemResponse.builder().item(item("test/leases/snowflake.3", "pod-1")).build()
+        );
+
+        assertEquals("test/leases/snowflake.3", provider.getKeyByParameterAndValue("test", parameter, "pod-1"));
+        verify(client, never()).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void shouldFallbackToScanAndWriteHolderItem() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(client.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        when(client.scan(any(ScanRequest.class))).thenReturn(
+                ScanResponse.builder().items(Collections.singletonList(item("test/leases/snowflake.3", "pod-1"))).build()
+        );
+
+        assertEquals("test/leases/snowflake.3", provider.getKeyByParameterAndValue("test", parameter, "pod-1"));
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(client).putItem(captor.capture());
+        assertEquals("test/lease-holders/snowflake/pod-1", captor.getValue().item().get("secretName").s());
+        assertEquals("test/leases/snowflake.3", captor.getValue().item().get("secretValue").s());
+    }
+
+    @Test
+    public void shouldFollowScanPagesForKeysByParameter() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(client.scan(any(ScanRequest.class))).thenReturn(
+                ScanResponse.builder().items(items(0, 2, -1)).scannedCount(50)
+                        .lastEvaluatedKey(Collections.singletonMap("secretName", AttributeValue.builder().s("test/key1").build())).build(),
+                ScanResponse.builder().items(Collections.emptyList()).scannedCount(50)
+                        .lastEvaluatedKey(Collections.singletonMap("secretName", AttributeValue.builder().s("test/key9").build())).build(),
+                ScanResponse.builder().items(items(2, 3, -1)).scannedCount(10).build()
+        );
+
+        List<String> keys = provider.getKeysByParameter("test", parameter);
+        assertEquals(3, keys.size());
+        assertEquals(3, provider.getScanPageCounter().get());
+        assertEquals(110, provider.getScannedItemCounter().get());
+
+        ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(client, times(3)).scan(captor.capture());
+        assertEquals("secretName", captor.getAllValues().get(0).projectionExpression());
+        assertTrue(captor.getAllValues().get(0).exclusiveStartKey().isEmpty());
+        assertEquals("test/key9", captor.getAllValues().get(2).exclusiveStartKey().get("secretName").s());
+    }
+
+    @Test
+    public void shouldScanInParallelSegments() throws IOException {
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        environment.put("SCAN_SEGMENTS", "4");
+        Utils.setEnvironment(environment);
+        try {
+            DynamoDbClient client = mock(DynamoDbClient.class);
+            DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", client);
+            LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+            when(client.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder().items(items(0, 2, -1)).build());
+
+            assertEquals(8, provider.getKeysByParameter("test", parameter).size());
+            ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+            verify(client, times(4)).scan(captor.capture());
+            List<Integer> segments = new ArrayList<>();
+            for (ScanRequest request : captor.getAllValues()) {
+                assertEquals(Integer.valueOf(4), request.totalSegments());
+                segments.add(request.segment());
+            }
+            Collections.sort(segments);
+            assertEquals(Arrays.asList(0, 1, 2, 3), segments);
+        } finally {
+            Utils.setEnvironment(null);
+        }
+    }
+
+    @Test
+    public void shouldQueryPartitionForKeysByParameter() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", TableLayoutEnum.PARTITIONED, client);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(client.query(any(QueryRequest.class))).thenReturn(
+                QueryResponse.builder().items(Collections.singletonList(item("test/leases/snowflake.1", "pod-1")))
+                        .lastEvaluatedKey(Collections.singletonMap("secretName", AttributeValue.builder().s("test/leases/snowflake.1").build())).build(),
+                QueryResponse.builder().items(Collections.singletonList(item("test/leases/snowflake.2", "pod-2"))).build()
+        );
+
+        assertEquals(Arrays.asList("test/leases/snowflake.1", "test/leases/snowflake.2"), provider.getKeysByParameter("test", parameter));
+        verify(client, never()).scan(any(ScanRequest.class));
+
+        ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(client, times(2)).query(captor.capture());
+        assertEquals("test/leases", captor.getValue().expressionAttributeValues().get(":group").s());
+        assertEquals("test/leases/snowflake", captor.getValue().expressionAttributeValues().get(":pathPrefix").s());
+        assertEquals(2, provider.getQueryPageCounter().get());
+    }
+
+    @Test
+    public void shouldWriteGroupForPartitionedLayout() throws IOException {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        DynamoDBStorageProvider provider = new DynamoDBStorageProvider("test-table", TableLayoutEnum.PARTITIONED, client);
+        SecretParameter parameter = new SecretParameter("secret.bsycorp.com/api-key.v1_provider", "kind=DYNAMIC,type=RANDOM,size=128");
+
+        provider.put("/env/app", parameter, "value", true);
+
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(client).putItem(captor.capture());
+        assertEquals("/env/app", captor.getValue().item().get("secretGroup").s());
+        assertEquals("/env/app/api-key.v1_provider", captor.getValue().item().get("secretName").s());
+    }
+
+    @Test
+    public void shouldReadBothLayoutsWhenMigrating() throws IOException {
+        DynamoDbClient currentClient = mock(DynamoDbClient.class);
+        DynamoDbClient previousClient = mock(DynamoDbClient.class);
+        MigratingStorageProvider provider = new MigratingStorageProvider(
+                new DynamoDBStorageProvider("test-table-partitioned", TableLayoutEnum.PARTITIONED, currentClient),
+                new DynamoDBStorageProvider("test-table", TableLayoutEnum.FLAT, previousClient)
+        );
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        when(currentClient.query(any(QueryRequest.class))).thenReturn(
+                QueryResponse.builder().items(Collections.singletonList(item("test/leases/snowflake.2", "pod-2"))).build());
+        when(previousClient.scan(any(ScanRequest.class))).thenReturn(
+                ScanResponse.builder().items(Arrays.asList(item("test/leases/snowflake.1", "pod-1"), item("test/leases/snowflake.2", "pod-2"))).build());
+
+        assertEquals(Arrays.asList("test/leases/snowflake.2", "test/leases/snowflake.1"), provider.getKeysByParameter("test", parameter));
+    }
+
+    @Test
+    public void shouldGetGroupForPath() {
+        assertEquals("/env/app/leases", DynamoDBStorageProvider.getGroupForPath("/env/app/leases/snowflake.12"));
+        assertEquals("/env/app/lease-holders/snowflake", DynamoDBStorageProvider.getGroupForPath("/env/app/lease-holders/snowflake/pod-1"));
+        assertEquals("/env/app", DynamoDBStorageProvider.getGroupForPath("/env/app/common.key"));
+    }
+
+    @Test
+    public void shouldGetHolderPathForLease() {
+        assertEquals("/env/app/lease-holders/snowflake/pod-1", DynamoDBStorageProvider.getHolderPathForLease("/env/app/leases/snowflake.12", "pod-1"));
+        assertEquals(null, DynamoDBStorageProvider.getHolderPathForLease("/env/app/common.key", "pod-1"));
+    }
+
+    private Map<String, AttributeValue> item(String name, String value) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("secretName", AttributeValue.builder().s(name).build());
+        item.put("secretValue", AttributeValue.builder().s(value).build());
+        return item;
+    }
+
+    private List<Map<String, AttributeValue>> items(int start, int end, int skip) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            if (i == skip) continue;
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("secretName", AttributeValue.builder().s("test/key" + i).build());
+            item.put("secretValue", AttributeValue.builder().s("value" + i).build());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private BatchGetItemResponse response(List<Map<String, AttributeValue>> items, List<Integer> unprocessed) {
+        BatchGetItemResponse.Builder builder = BatchGetItemResponse.builder()
+                .responses(Collections.singletonMap("test-table", items));
+        if (!unprocessed.isEmpty()) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (Integer i : unprocessed) {
+                keys.add(Collections.singletonMap("secretName", AttributeValue.builder().s("test/key" + i).build()));
+            }
+            builder.unprocessedKeys(Collections.singletonMap("test-table", KeysAndAttributes.builder().keys(keys).build()));
+        }
+        return builder.build();
+    }
+}
@@ -3,9 +3,15 @@ package com.bsycorp.kees.storage;
 import com.bsycorp.kees.models.Parameter;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 public class LocalStorageProviderTest {
@@ -26,6 +32,16 @@ public class LocalStorageProviderTest {
         assertEquals("MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEAmFuN37R3egbUcXtNkYiGrc/kYGYClIDCnkER1gRKEJ8xDaUdYJDA0DjiN1S7pX4GEUURDBDWD5fHyDtX38tgAMR1fnUt9EGLxOXCSgDCYpGNcd/toMnsKwkgvEDr9DupA/RlH5VUl+HytzcgWKNj1oG0k6qOyzXSrBpiWe693CX+F2etChU7cBBPxGPKCYSgw2laLNoLiFUZVgeakkhL3A7vMYuTQSK3w3iavYFe1x1Mwq16HA8yPU7qaHyvtZAm/ld5u3qM6nABFikTZhlSIirQa4WNL5+e7jcapKEWmo+PcTr3Thr1pi+8OXXuv4QwjaYOCQFxC1CH8zyjIViRJQIDAQAB", result);
     }
 
+    @Test
+    public void shouldRetrieveEllipticCurveValueForParameter() throws Exception {
+        Parameter publicParameter = Parameter.construct("secret.bsycorp.com/service-b.v1_public", "kind=DYNAMIC,type=ED25519");
+        Parameter privateParameter = Parameter.construct("secret.bsycorp.com/service-b.v1_private", "kind=DYNAMIC,type=ED25519");
+        //DER encoded ed25519 keys are a fixed size, the PKCS#8 private key also carries the public key
+        assertEquals(44, Base64.getDecoder().decode(provider.getValueByKey("local", publicParameter)).length);
+        assertEquals(83, Base64.getDecoder().decode(provider.getValueByKey("local", privateParameter)).length);
+        assertEquals(provider.getValueByKey("local", publicParameter), provider.getValueByKey("local", publicParameter));
+    }
+
     @Test
     public void shouldRetrieveRawValueForResourceParameter() throws Exception {
         Parameter parameter = Parameter.construct("resource.bsycorp.com/app.db.main.url", "storageKey=db.url,localModeValue=dmFsdWU=");
@@ -39,4 +55,46 @@ public class LocalStorageProviderTest {
         String result = provider.getValueByKey("local", parameter);
         assertEquals("dmFsdWU=", result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRetrieveValuesForMultipleParameters() throws Exception {
+        Parameter secret = Parameter.construct("secret.bsycorp.com/service-b.v1_public", "kind=DYNAMIC,type=RSA,size=2048");
+        Parameter resource = Parameter.construct("resource.bsycorp.com/app.db.main.url", "storageKey=db.url,localModeValue=dmFsdWU=");
+        Map<String, String> result = provider.getValuesByKeys("local", Arrays.asList(secret, resource, resource));
+        assertEquals(2, result.size());
+        assertEquals(provider.getValueByKey("local", secret), result.get("local/service-b.v1_public"));
+        assertEquals("dmFsdWU=", result.get("local/db.url"));
+    }
+
+    @Test
+    public void shouldNotFindAllParameters() throws Exception {
+        Parameter secret = Parameter.construct("secret.bsycorp.com/service-b.v1_public", "kind=DYNAMIC,type=RSA,size=2048");
+        assertFalse(provider.existsAll("local", Arrays.asList(secret)));
+    }
+
+    @Test
+    public void shouldGetEntriesFromKeysAndValues() throws Exception {
+        Map<String, String> store = new HashMap<>();
+        store.put("local/leases/snowflake.0", "pod-a");
+        store.put("local/leases/snowflake.1", "pod-b");
+        //listed but deleted before its value is read
+        store.put("local/leases/snowflake.2", null);
+        StorageProvider provider = new LocalStorageProvider() {
+            @Override
+            public List<String> getKeysByParameter(String storagePrefix, Parameter parameter) {
+                return new ArrayList<>(store.keySet());
+            }
+
+            @Override
+            public String getValueByKey(String storagePrefix, Parameter key) {
+                return store.get(key.getStorageFullPath(storagePrefix));
+            }
+        };
+
+        Parameter parameter = Parameter.construct("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+        Map<String, String> result = provider.getEntriesByParameter("local", parameter);
+        assertEquals(2, result.size());
+        assertEquals("pod-a", result.get("local/leases/snowflake.0"));
+        assertEquals("pod-b", result.get("local/leases/snowflake.1"));
+    }
+}
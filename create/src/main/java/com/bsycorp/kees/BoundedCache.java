@@ -0,0 +1,94 @@
+package com.bsycorp.kees;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//thread safe cache holding at most maxSize entries, evicting the least recently used. entries can also be given a time to live
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private final AtomicInteger hitCounter = new AtomicInteger();
+    private final AtomicInteger missCounter = new AtomicInteger();
+    private final AtomicInteger evictionCounter = new AtomicInteger();
+    private final AtomicInteger expirationCounter = new AtomicInteger();
+
+    public BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                boolean evict = size() > BoundedCache.this.maxSize;
+                if (evict) {
+                    evictionCounter.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= currentTimeMillis()) {
+            //expired entries are dropped when next read, or pushed out by the size bound
+            entries.remove(key);
+            expirationCounter.incrementAndGet();
+            entry = null;
+        }
+        if (entry != null) {
+            hitCounter.incrementAndGet();
+            return entry.value;
+        }
+        missCounter.incrementAndGet();
+        return null;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, Long.MAX_VALUE));
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        entries.put(key, new CacheEntry<>(value, currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    //overridable for tests
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public AtomicInteger getHitCounter() {
+        return hitCounter;
+    }
+
+    public AtomicInteger getMissCounter() {
+        return missCounter;
+    }
+
+    public AtomicInteger getEvictionCounter() {
+        return evictionCounter;
+    }
+
+    public AtomicInteger getExpirationCounter() {
+        return expirationCounter;
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -15,39 +15,64 @@ import com.bsycorp.kees.models.SecretTypeEnum;
 import com.bsycorp.kees.storage.DynamoDBStorageProvider;
 import com.bsycorp.kees.storage.StorageProvider;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.KubernetesClientException;
-import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
-import org.apache.commons.collections4.map.PassiveExpiringMap;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
 
 public class CreateMain {
 
     private static final Logger LOG = LoggerFactory.getLogger(CreateMain.class);
-    private static final Locker POD_LOCKER = new Locker();
+    //also used by the LeaseReconciler to look up lease holders
+    static final String POD_NAME_INDEX = "name";
 
     private KubernetesClient client;
     private StorageProvider storageProvider;
+    private LeaseAllocator leaseAllocator;
+    private LeaseReconciler leaseReconciler;
     private DataProvider dataProvider = new RandomDataProvider();
     private AnnotationParser annotationParser = new AnnotationParser();
     private AtomicInteger exceptionCounter = new AtomicInteger();
     private AtomicInteger eventCounter = new AtomicInteger();
-    private Watch watch = null;
+    private AtomicInteger droppedEventCounter = new AtomicInteger();
+    //digest of the annotations we care about for each pod as last queued, used to drop MODIFIED events that don't touch them
+    private Map<String, Long> annotationDigests = new ConcurrentHashMap<>();
+    private List<SharedInformerFactory> informerFactories = new CopyOnWriteArrayList<>();
+    private List<SharedIndexInformer<Pod>> podInformers = new CopyOnWriteArrayList<>();
+    //clients created per watched namespace, closed on shutdown
+    private List<KubernetesClient> namespacedClients = new CopyOnWriteArrayList<>();
     final CountDownLatch watcherLatch = new CountDownLatch(1);
-    private Map<String, String> expiringCache = new PassiveExpiringMap<>(60000);
-    private ExecutorService executorService = Executors.newWorkStealingPool(50);
+    //parameters handled recently, true once they exist in storage and false for REFERENCE secrets that weren't found
+    private BoundedCache<String, Boolean> processedCache = new BoundedCache<>((int) getConfig("PROCESSED_CACHE_SIZE", 10000));
+    private long positiveTtlMillis = getConfig("PROCESSED_CACHE_TTL_SECONDS", 60) * 1000;
+    private long negativeTtlMillis = getConfig("PROCESSED_CACHE_NEGATIVE_TTL_SECONDS", 10) * 1000;
+    private SingleFlight<String, Boolean> secretFlight = new SingleFlight<>();
+    private Locker leaseLocker = new Locker((int) getConfig("LEASE_LOCK_STRIPES", 256));
+    private BoundedCache<String, Boolean> reconciledTemplates = new BoundedCache<>((int) getConfig("TEMPLATE_CACHE_SIZE", 1000));
+    //storage I/O workers, CPU bound key generation is handed off to its own pool sized to the cores
+    private ExecutorService executorService = Executors.newWorkStealingPool((int) getConfig("IO_THREADS", 50));
+    private KeyGenerationPool keyGenerationPool = new KeyGenerationPool((int) getConfig("KEY_GENERATION_THREADS", Runtime.getRuntime().availableProcessors()));
+    private PodWorkQueue podWorkQueue = new PodWorkQueue(this::handleEvent, executorService);
 
     public static void main(String... argv) throws Exception {
         setupProxyProperties();
@@ -60,7 +85,11 @@ public class CreateMain {
         }
 
         try {
-            main.setStorageProvider(new DynamoDBStorageProvider(Utils.getTableName(envLabel)));
+            //one off migration, leases created before holder items existed need one before scan fallback can be turned off
+            if ("true".equals(Utils.getEnvironment().get("LEASE_HOLDER_BACKFILL"))) {
+                new DynamoDBStorageProvider(Utils.getTableName(envLabel)).backfillLeaseHolders();
+            }
+            main.setStorageProvider(DynamoDBStorageProvider.forEnvironment(envLabel));
             main.run();
         } catch (Exception e) {
             LOG.error("Error in execution", e);
@@ -74,41 +103,118 @@ public class CreateMain {
         //watch pods
         if (client == null) {
             LOG.info("Creating Kubernetes client..");
-            client = new DefaultKubernetesClient();
+            //no namespace so an unrestricted watch sees pods in all namespaces
+            Config config = Config.autoConfigure(null);
+            config.setNamespace(null);
+            client = new DefaultKubernetesClient(config);
         }
 
-        watch = client.pods().inAnyNamespace().watch(new Watcher<Pod>() {
+        //informer keeps a local cache of pods and resumes its watch from the last seen resourceVersion on reconnect, only relisting if that has expired
+        WatchScope watchScope = WatchScope.fromEnvironment();
+        LOG.info("Watching pods in {}", watchScope);
+        long resyncPeriodMillis = getResyncPeriodMillis();
+        ResourceEventHandler<Pod> eventHandler = new ResourceEventHandler<Pod>() {
 
             @Override
-            public synchronized void eventReceived(Action action, Pod resource) {
-                //only try to create
-                if(action == Action.ADDED || action == Action.MODIFIED || action == Action.DELETED) {
-                    executorService.submit(() -> {
-                        handleEvent(action, resource);
-                    });
-                }
+            public void onAdd(Pod pod) {
+                eventReceived(Watcher.Action.ADDED, pod, false);
             }
 
             @Override
-            public void onClose(KubernetesClientException cause) {
-                LOG.error("Pod watcher closed, terminating..", cause);
-                //decrement latch to mark watcher closed.
-                watcherLatch.countDown();
+            public void onUpdate(Pod oldPod, Pod newPod) {
+                //same resourceVersion means this is a periodic resync rather than a change, let it through so pods get re-checked
+                boolean resync = resyncPeriodMillis > 0
+                        && oldPod.getMetadata().getResourceVersion() != null
+                        && oldPod.getMetadata().getResourceVersion().equals(newPod.getMetadata().getResourceVersion());
+                eventReceived(Watcher.Action.MODIFIED, newPod, resync);
             }
 
-        });
+            @Override
+            public void onDelete(Pod pod, boolean deletedFinalStateUnknown) {
+                eventReceived(Watcher.Action.DELETED, pod, false);
+            }
+
+        };
+
+        //informers are scoped to the namespace of their client, so one per namespace when restricted
+        List<String> namespaces = watchScope.getNamespaces().isEmpty() ? Collections.singletonList(null) : watchScope.getNamespaces();
+        for (String namespace : namespaces) {
+            SharedInformerFactory informerFactory = getNamespacedClient(namespace).informers();
+            informerFactory.addSharedInformerEventListener(e -> LOG.error("Pod informer error, it will retry", e));
+            SharedIndexInformer<Pod> podInformer = informerFactory.sharedIndexInformerFor(Pod.class, PodList.class, watchScope.toOperationContext(), resyncPeriodMillis);
+            podInformer.addIndexers(Collections.singletonMap(POD_NAME_INDEX, pod -> Collections.singletonList(pod.getMetadata().getName())));
+            podInformer.addEventHandler(eventHandler);
+            informerFactories.add(informerFactory);
+            podInformers.add(podInformer);
+        }
 
-        //blocking while watcher is connected
+        //clean up leases for pods whose delete event we missed
+        leaseReconciler = new LeaseReconciler(client, storageProvider, leaseAllocator, leaseLocker);
+        leaseReconciler.setPodInformers(podInformers, watchScope.isUnrestricted());
+        leaseReconciler.start();
+
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.startAllRegisteredInformers();
+        }
+
+        //blocking until shutdown, the informer handles reconnecting itself
         watcherLatch.await();
     }
 
-    private void handleEvent(Watcher.Action action, Pod resource) {
-        Lock podLock = POD_LOCKER.getLock(resource.getMetadata().getNamespace() + "-" + resource.getMetadata().getName());
+    private void eventReceived(Watcher.Action action, Pod pod, boolean resync) {
+        //only keep the metadata we use, the rest of the pod can be collected straight away
+        PodDescriptor resource = PodDescriptor.from(pod);
+        if (!resync && isUnchanged(action, resource)) {
+            //most modifications are status changes, nothing for us to do unless our annotations changed
+            droppedEventCounter.incrementAndGet();
+            eventCounter.incrementAndGet();
+            return;
+        }
+        if (!podWorkQueue.add(action, resource)) {
+            //folded into an event already queued for this pod, still counts as received
+            eventCounter.incrementAndGet();
+        }
+    }
+
+    //informers use the namespace from the client config, an unrestricted watch uses the client as given so whoever set it keeps control of it
+    private KubernetesClient getNamespacedClient(String namespace) {
+        if (namespace == null) {
+            return client;
+        }
+        KubernetesClient namespacedClient = new DefaultKubernetesClient(new ConfigBuilder(client.getConfiguration()).withNamespace(namespace).build());
+        namespacedClients.add(namespacedClient);
+        return namespacedClient;
+    }
+
+    private long getConfig(String name, long defaultValue) {
+        String value = Utils.getEnvironment().get(name);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private long getResyncPeriodMillis() {
+        String value = Utils.getEnvironment().get("POD_RESYNC_PERIOD_SECONDS");
+        return value != null ? Long.parseLong(value.trim()) * 1000 : 0;
+    }
+
+    //pods from the local informer cache with the given name, across all namespaces
+    public List<Pod> getCachedPodsByName(String name) {
+        List<Pod> pods = new ArrayList<>();
+        for (SharedIndexInformer<Pod> podInformer : podInformers) {
+            pods.addAll(podInformer.getIndexer().byIndex(POD_NAME_INDEX, name));
+        }
+        return pods;
+    }
+
+    //completes with false if the event had failures and should be retried, the work queue makes sure only one event per pod runs at a time.
+    //key pairs are generated on their own pool, the event completes once they are stored without a worker waiting on them
+    private CompletableFuture<Boolean> handleEvent(Watcher.Action action, PodDescriptor resource) {
+        boolean success = true;
+        List<CompletableFuture<Boolean>> secretResults = new ArrayList<>();
+        String reconciledTemplateKey = null;
         try {
-            podLock.lock();
-            LOG.info("Checking pod: {} in namespace: {}", resource.getMetadata().getName(), resource.getMetadata().getNamespace());
+            LOG.info("Checking pod: {} in namespace: {}", resource.getName(), resource.getNamespace());
             //get annotations from pod definition
-            Map<String, String> annotations = resource.getMetadata().getAnnotations();
+            Map<String, String> annotations = resource.getAnnotations();
             if(annotations == null){
                 //default to empty map to avoid NPE
                 annotations = Collections.EMPTY_MAP;
@@ -117,8 +223,9 @@ public class CreateMain {
             //check if pod is running local mode
             if (isLocalMode(annotations)) {
                 //local mode
-                LOG.info("Pod {} in namespace: {} is in local mode, skipping.", resource.getMetadata().getName(), resource.getMetadata().getNamespace());
-                return;
+                LOG.info("Pod {} in namespace: {} is in local mode, skipping.", resource.getName(), resource.getNamespace());
+                eventCounter.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
             }
 
             //otherwise is a valid pod, parse and create missing!
@@ -128,39 +235,67 @@ public class CreateMain {
             //if we have some matching annotations
             if (parameters.size() > 0 && storagePrefix != null) {
                 LOG.info("Found {} matching annotations to process..", parameters.size());
+                //pods from the same template share their secrets and resources, once one pod has reconciled them the rest only need their leases
+                String templateKey = action != Watcher.Action.DELETED ? getTemplateKey(resource) : null;
+                boolean templateReconciled = templateKey != null && reconciledTemplates.get(templateKey) != null;
+                if (templateReconciled) {
+                    LOG.info("Template of pod {} already reconciled, only handling leases..", resource.getName());
+                }
+
                 for (Parameter parameter : parameters) {
                     try {
                         //handle deletes without looking at process cache
                         if (action == Watcher.Action.DELETED && parameter instanceof LeaseParameter) {
-                            handleLeaseParameterDelete((LeaseParameter) parameter, resource, storagePrefix);
+                            leaseLocker.lock(resource.getName());
+                            try {
+                                handleLeaseParameterDelete((LeaseParameter) parameter, resource, storagePrefix);
+                            } finally {
+                                leaseLocker.unlock(resource.getName());
+                            }
+                            continue;
+                        }
+                        if (templateReconciled && !(parameter instanceof LeaseParameter)) {
                             continue;
                         }
 
                         //if we have processed this param recently then skip!
                         String cacheKey = getCacheKey(resource, parameter, storagePrefix);
-                        if (expiringCache.containsKey(cacheKey)) {
+                        if (processedCache.get(cacheKey) != null) {
                             LOG.info("Skipping parameter '{}' as already exists in processed cache..", cacheKey);
                             continue;
                         }
 
                         //otherwise process the parameter depending on the type
                         if (parameter instanceof LeaseParameter) {
-                            handleLeaseParameterUpsert((LeaseParameter) parameter, resource, storagePrefix);
+                            //leases are held by pod name, the reconciler takes the same lock before reclaiming one
+                            leaseLocker.lock(resource.getName());
+                            try {
+                                handleLeaseParameterUpsert((LeaseParameter) parameter, resource, storagePrefix);
+                            } finally {
+                                leaseLocker.unlock(resource.getName());
+                            }
 
                         } else if (parameter instanceof ResourceParameter) {
                             //ignore as resources can't be generated
 
                         } else if (parameter instanceof SecretParameter) {
                             //check provider, see if it already exists, if nothing then go create..
-                            Lock podSecretLock = POD_LOCKER.getLock(storagePrefix + "-" + parameter.getParameterName());
-                            try {
-                                //defend against concurrent generation of the same secret, could lead to divergent RSA public/private key parts
-                                podSecretLock.lock();
-                                handleSecretParameter((SecretParameter) parameter, resource, action, storagePrefix);
-
-                            } finally {
-                                podSecretLock.unlock();
-                            }
+                            //secrets are shared by every pod of a workload, pods arriving while that is in flight share its result.
+                            //this also defends against concurrent generation of the same secret, could lead to divergent RSA public/private key parts
+                            SecretParameter secretParameter = (SecretParameter) parameter;
+                            secretResults.add(secretFlight.execute(getSecretKey(secretParameter, storagePrefix), () -> handleSecretParameter(secretParameter, resource, action, storagePrefix)
+                                    .thenApply(found -> {
+                                        //a missing REFERENCE secret is only remembered briefly so it is picked up soon after being added
+                                        processedCache.put(cacheKey, found, found ? positiveTtlMillis : negativeTtlMillis);
+                                        return found;
+                                    }))
+                                    .handle((found, e) -> {
+                                        if (e != null) {
+                                            LOG.error("Error completing processing for annotation: " + parameter.getFullAnnotationName(), e);
+                                            return false;
+                                        }
+                                        return true;
+                                    }));
 
                         } else {
                             throw new RuntimeException("Unsupported parameter");
@@ -168,24 +303,42 @@ public class CreateMain {
 
                     } catch (Exception e) {
                         LOG.error("Error completing processing for annotation: " + parameter.getFullAnnotationName(), e);
+                        success = false;
                     }
                 }
+
+                if (templateKey != null && !templateReconciled) {
+                    reconciledTemplateKey = templateKey;
+                }
             }
 
         } catch (Exception e) {
             exceptionCounter.incrementAndGet();
             LOG.error("Error processing event received", e);
+            success = false;
+        }
 
-        } finally {
+        boolean parametersHandled = success;
+        String templateKey = reconciledTemplateKey;
+        return CompletableFuture.allOf(secretResults.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            boolean handled = parametersHandled && secretResults.stream().allMatch(CompletableFuture::join);
+            if (handled && templateKey != null) {
+                reconciledTemplates.put(templateKey, Boolean.TRUE, positiveTtlMillis);
+            }
+            if (!handled) {
+                //make sure the next event for the pod isn't dropped as unchanged
+                annotationDigests.remove(PodWorkQueue.getKey(resource));
+            }
             eventCounter.incrementAndGet();
-            podLock.unlock();
-        }
+            return handled;
+        });
     }
 
-    private void handleSecretParameter(SecretParameter parameter, Pod resource, Watcher.Action action, String storagePrefix) {
+    //completes with true once the secret exists in storage, key pairs complete after they've been generated and stored
+    private CompletableFuture<Boolean> handleSecretParameter(SecretParameter parameter, PodDescriptor resource, Watcher.Action action, String storagePrefix) throws Exception {
         //if secret already exists then noop, don't re-generate
         if(storageProvider.exists(storagePrefix, parameter)) {
-            return;
+            return CompletableFuture.completedFuture(true);
         }
 
         //only create values for dynamic values
@@ -193,21 +346,31 @@ public class CreateMain {
             LOG.info("Found parameter {} with no matching value, creating..", parameter.getParameterName());
             SecretParameter secretParameter = (SecretParameter) parameter;
 
-            //need special behaviour for RSA as it has two params generated from one call. breaks abstracts and is annoying.
-            if (secretParameter.getType() == SecretTypeEnum.RSA) {
-                parameter.overrideFieldName("public");
-                String[] encodedValues = dataProvider.generatePairedBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId());
-                storageProvider.put(storagePrefix, parameter, encodedValues[0], true);
-                parameter.overrideFieldName("private");
-                storageProvider.put(storagePrefix, parameter, encodedValues[1], true);
-            } else if (secretParameter.getType() == SecretTypeEnum.GPG) {
-                parameter.overrideFieldName("public");
-                String[] encodedValues = dataProvider.generatePairedBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId());
-                storageProvider.put(storagePrefix, parameter, encodedValues[0], true);
-                parameter.overrideFieldName("private");
-                storageProvider.put(storagePrefix, parameter, encodedValues[1], true);
-                parameter.overrideFieldName("password");
-                storageProvider.put(storagePrefix, parameter, encodedValues[2], true);
+            //need special behaviour for key pairs as they have two params generated from one call. breaks abstracts and is annoying.
+            //key pairs are generated on the key generation pool and stored back on the I/O workers, random values are cheap enough to generate inline
+            if (secretParameter.getType() == SecretTypeEnum.GPG) {
+                return keyGenerationPool.generate(() -> dataProvider.generatePairedBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId(), secretParameter.getAlgorithm()))
+                        .thenApplyAsync(encodedValues -> {
+                            parameter.overrideFieldName("public");
+                            storageProvider.put(storagePrefix, parameter, encodedValues[0], true);
+                            parameter.overrideFieldName("private");
+                            storageProvider.put(storagePrefix, parameter, encodedValues[1], true);
+                            parameter.overrideFieldName("password");
+                            storageProvider.put(storagePrefix, parameter, encodedValues[2], true);
+                            LOG.info("Created value for {}", parameter.getParameterName());
+                            return true;
+                        }, executorService);
+            } else if (secretParameter.getType().isPaired()) {
+                //RSA and the elliptic curve types store a public/private pair
+                return keyGenerationPool.generate(() -> dataProvider.generatePairedBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize(), secretParameter.getUserId(), secretParameter.getAlgorithm()))
+                        .thenApplyAsync(encodedValues -> {
+                            parameter.overrideFieldName("public");
+                            storageProvider.put(storagePrefix, parameter, encodedValues[0], true);
+                            parameter.overrideFieldName("private");
+                            storageProvider.put(storagePrefix, parameter, encodedValues[1], true);
+                            LOG.info("Created value for {}", parameter.getParameterName());
+                            return true;
+                        }, executorService);
                 //TODO extract this out to another secret type
             } else if (secretParameter.getType() == SecretTypeEnum.RANDOM && secretParameter.getParameterName().startsWith("api-key")) {
                 String encodedValue = dataProvider.generateBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize());
@@ -219,70 +382,65 @@ public class CreateMain {
 
             } else {
                 //otherwise treat as normal value
-                storageProvider.put(storagePrefix, parameter, dataProvider.generateBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize()), true);
+                storageProvider.put(storagePrefix, parameter, dataProvider.generateBase64Encoded(secretParameter.getType(), parameter.getParameterName(), secretParameter.getSize(), secretParameter.getAlphabet()), true);
             }
 
             LOG.info("Created value for {}", parameter.getParameterName());
-            expiringCache.put(getCacheKey(resource, parameter, storagePrefix), "success");
+            return CompletableFuture.completedFuture(true);
         }
+        return CompletableFuture.completedFuture(false);
     }
 
-    protected void handleLeaseParameterUpsert(LeaseParameter parameter, Pod resource, String storagePrefix) throws IOException {
+    protected void handleLeaseParameterUpsert(LeaseParameter parameter, PodDescriptor resource, String storagePrefix) throws IOException {
         //take lease storage prefix and find a lease index within the range, keep leased items in memory to make leasing cheaper
         //make sure we havent already given this pod a lease, if so use that value
         LeaseParameter leaseParameter = parameter;
-        String podName = resource.getMetadata().getName();
+        String podName = resource.getName();
         String storageKeyPrefix = leaseParameter.getStorageKeyPrefix();
         long start = System.currentTimeMillis();
+        if (leaseReconciler != null) {
+            leaseReconciler.track(storagePrefix, leaseParameter);
+        }
 
         String leaseKey = storageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
-        if (leaseKey == null) {
-            List<String> existingLeaseKeys = storageProvider.getKeysByParameter(storagePrefix, parameter);
-            boolean assignedLease = false;
-            //generate valid local value for lease
-            for (int index = leaseParameter.getRangeStart(); index <= leaseParameter.getRangeEnd(); index++) {
-                //it would be more efficient to try and maintain a list of what has been previously issued, but that risks omitting valid numbers
-                //since the range is probably small, just brute force lookups against dynamo until we get one that succeeds
-                String potentialLeaseKey = storageKeyPrefix + "." + index;
-                ResolvedLeaseParameter potentialParameter = new ResolvedLeaseParameter(
-                        parameter,
-                        potentialLeaseKey.substring(storageKeyPrefix.length() + 1)
-                );
-                //check if this potential lease is alreday taken, if so skip it.
-                if (existingLeaseKeys.contains(potentialParameter.getStorageFullPath(storagePrefix))) {
-                    continue;
-                }
-                //reserve that value in dynamo against pod
-                leaseKey = potentialLeaseKey;
-                try {
-                    storageProvider.put(storagePrefix, potentialParameter, podName, false);
-                    LOG.info("Created lease {} for pod {} took: {}ms", leaseKey, podName, System.currentTimeMillis() - start);
-                    expiringCache.put(getCacheKey(resource, parameter, storagePrefix), "success");
-                    assignedLease = true;
-                    break;
-                } catch (Exception e) {
-                    //error putting key, assume its conflicting / already taken, try again
-                }
-            }
 
-            if (!assignedLease) {
+        //statefulset pods without a lease try the index for their ordinal first, a pod already holding another index keeps it
+        //rather than ending up with two. only pods owned by a statefulset have ordinals, other pods can have names ending -<n> too
+        Integer preferredIndex = leaseKey == null && isStatefulSetPod(resource) ? leaseParameter.getPreferredIndex(podName) : null;
+        if (preferredIndex != null && leaseAllocator.allocatePreferred(storagePrefix, leaseParameter, podName, preferredIndex)) {
+            LOG.info("Assigned ordinal lease {}.{} for pod {} took: {}ms", storageKeyPrefix, preferredIndex, podName, System.currentTimeMillis() - start);
+            processedCache.put(getCacheKey(resource, parameter, storagePrefix), Boolean.TRUE, positiveTtlMillis);
+            return;
+        }
+
+        if (leaseKey == null) {
+            //find a free index from the in memory bitmap of leased indexes, the put against storage still has the final say
+            String leaseValue = leaseAllocator.allocate(storagePrefix, leaseParameter, podName);
+            if (leaseValue != null) {
+                leaseKey = storageKeyPrefix + "." + leaseValue;
+                LOG.info("Created lease {} for pod {} took: {}ms", leaseKey, podName, System.currentTimeMillis() - start);
+                processedCache.put(getCacheKey(resource, parameter, storagePrefix), Boolean.TRUE, positiveTtlMillis);
+            } else {
+                //fail the event so the pod is retried and its next event isn't dropped as unchanged, leases may be freed by then
                 LOG.error("Couldn't create valid lease for prefix, ran out of valid leases: {}", storageKeyPrefix);
+                throw new RuntimeException("Ran out of valid leases for prefix: " + storageKeyPrefix);
             }
 
         } else {
             LOG.info("Re-used lease {} for pod {}, took {}ms", leaseKey, podName, System.currentTimeMillis() - start);
-            expiringCache.put(getCacheKey(resource, parameter, storagePrefix), "success");
+            processedCache.put(getCacheKey(resource, parameter, storagePrefix), Boolean.TRUE, positiveTtlMillis);
         }
     }
 
-    //also have housekeeping control loop to keep local cache in sync and clean up missing / deleted pods
-    protected void handleLeaseParameterDelete(LeaseParameter parameter, Pod resource, String storagePrefix) throws IOException {
-        String podName = resource.getMetadata().getName();
+    //leases for deleted pods missed here are cleaned up by the LeaseReconciler
+    protected void handleLeaseParameterDelete(LeaseParameter parameter, PodDescriptor resource, String storagePrefix) throws IOException {
+        String podName = resource.getName();
 
         String fullLeaseKey = storageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
         if (fullLeaseKey != null && !fullLeaseKey.isEmpty()) {
             String leaseValue = fullLeaseKey.substring((storagePrefix + "/leases/" + parameter.getStorageKeyPrefix()).length() + 1);
             storageProvider.delete(storagePrefix, new ResolvedLeaseParameter(parameter, leaseValue), podName);
+            leaseAllocator.release(storagePrefix, parameter, leaseValue);
             LOG.info("Deleted lease for pod: {} with key: {}", podName, fullLeaseKey);
         } else {
             LOG.debug("Didn't delete lease for pod: {} with key: {}", podName, fullLeaseKey);
@@ -290,10 +448,19 @@ public class CreateMain {
     }
 
     public void shutdown() {
-        if (watch != null) {
-            watch.close();
-            watcherLatch.countDown();
+        if (leaseReconciler != null) {
+            leaseReconciler.shutdown();
+        }
+        podWorkQueue.shutdown();
+        keyGenerationPool.shutdown();
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.stopAllRegisteredInformers();
+        }
+        for (KubernetesClient namespacedClient : namespacedClients) {
+            namespacedClient.close();
         }
+        namespacedClients.clear();
+        watcherLatch.countDown();
     }
 
     public void setClient(KubernetesClient client) {
@@ -302,6 +469,7 @@ public class CreateMain {
 
     public void setStorageProvider(StorageProvider storageProvider) {
         this.storageProvider = storageProvider;
+        this.leaseAllocator = new LeaseAllocator(storageProvider);
     }
 
     public void setDataProvider(DataProvider dataProvider) {
@@ -312,10 +480,111 @@ public class CreateMain {
         return exceptionCounter;
     }
 
+    public SingleFlight<String, Boolean> getSecretFlight() {
+        return secretFlight;
+    }
+
+    public BoundedCache<String, Boolean> getProcessedCache() {
+        return processedCache;
+    }
+
+    public KeyGenerationPool getKeyGenerationPool() {
+        return keyGenerationPool;
+    }
+
+    public Locker getLeaseLocker() {
+        return leaseLocker;
+    }
+
+    public BoundedCache<String, Boolean> getReconciledTemplates() {
+        return reconciledTemplates;
+    }
+
     public AtomicInteger getEventCounter() {
         return eventCounter;
     }
 
+    public LeaseAllocator getLeaseAllocator() {
+        return leaseAllocator;
+    }
+
+    public AtomicInteger getDroppedEventCounter() {
+        return droppedEventCounter;
+    }
+
+    public PodWorkQueue getPodWorkQueue() {
+        return podWorkQueue;
+    }
+
+    public List<KubernetesClient> getNamespacedClients() {
+        return namespacedClients;
+    }
+
+    public LeaseReconciler getLeaseReconciler() {
+        return leaseReconciler;
+    }
+
+    boolean isUnchanged(Watcher.Action action, PodDescriptor resource) {
+        String key = PodWorkQueue.getKey(resource);
+        if (action == Watcher.Action.DELETED) {
+            annotationDigests.remove(key);
+            return false;
+        }
+        long digest = getAnnotationDigest(resource.getAnnotations());
+        Long previous = annotationDigests.put(key, digest);
+        return action == Watcher.Action.MODIFIED && previous != null && previous == digest;
+    }
+
+    //64 bit FNV-1a over the sorted kees annotations, other annotations and the rest of the pod don't affect it
+    static long getAnnotationDigest(Map<String, String> annotations) {
+        long hash = 0xcbf29ce484222325L;
+        if (annotations == null) {
+            return hash;
+        }
+        String domain = getAnnotationDomain();
+        for (Map.Entry<String, String> entry : new TreeMap<>(annotations).entrySet()) {
+            String name = entry.getKey();
+            if (!(name.startsWith("secret." + domain) || name.startsWith("resource." + domain)
+                    || name.startsWith("lease." + domain) || name.startsWith("init." + domain))) {
+                continue;
+            }
+            hash = fnv(hash, name);
+            hash = fnv(hash, entry.getValue());
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        //separator so name/value boundaries can't shift between entries
+        hash ^= 0xff;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    //identifies pods stamped from the same ReplicaSet or StatefulSet revision with the same kees annotations, null for pods without a template
+    static String getTemplateKey(PodDescriptor resource) {
+        String templateHash = resource.getLabels().get("pod-template-hash");
+        if (templateHash == null) {
+            templateHash = resource.getLabels().get("controller-revision-hash");
+        }
+        if (templateHash == null || resource.getOwnerReferences().isEmpty()) {
+            return null;
+        }
+        return resource.getNamespace() + "/" + resource.getOwnerReferences().get(0).getUid() + "/" + templateHash
+                + "/" + Long.toHexString(getAnnotationDigest(resource.getAnnotations()));
+    }
+
+    boolean isStatefulSetPod(PodDescriptor resource) {
+        return resource.getOwnerReferences().stream()
+                .anyMatch(owner -> "StatefulSet".equals(owner.getKind()));
+    }
+
     boolean isLocalMode(Map properties) {
         //if local mode exists and its true
         return properties != null
@@ -323,9 +592,19 @@ public class CreateMain {
                 && (!((String) properties.get("init."  + getAnnotationDomain() + "/local-mode")).contains("false"));
     }
 
-    String getCacheKey(Pod resource, Parameter parameter, String storagePrefix) {
+    //fields generated together by one call share a key so they're only generated once, any other field is its own secret
+    String getSecretKey(SecretParameter parameter, String storagePrefix) {
+        boolean generatedTogether = parameter.getType().isPaired()
+                || (parameter.getType() == SecretTypeEnum.RANDOM && parameter.getParameterName().startsWith("api-key"));
+        return storagePrefix + "/" + (generatedTogether ? parameter.getParameterName() : parameter.getParameterNameWithField());
+    }
+
+    String getCacheKey(PodDescriptor resource, Parameter parameter, String storagePrefix) {
         if (parameter instanceof LeaseParameter) {
-            return storagePrefix + "/" + parameter.getParameterName() + "@" + resource.getMetadata().getNamespace() + "/" + resource.getMetadata().getName();
+            return storagePrefix + "/" + parameter.getParameterName() + "@" + resource.getNamespace() + "/" + resource.getName();
+        } else if (parameter instanceof SecretParameter) {
+            //same key as the single-flight, so a field is only skipped once the call that generates it has run
+            return getSecretKey((SecretParameter) parameter, storagePrefix);
         } else {
             return storagePrefix + "/" + parameter.getParameterNameWithField();
         }
@@ -0,0 +1,84 @@
+package com.bsycorp.kees;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//runs CPU bound key generation on its own pool sized to the cores, so a burst of large RSA/GPG keys can't hold the storage I/O workers
+public class KeyGenerationPool {
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger generatedCounter = new AtomicInteger();
+    private final AtomicLong totalQueuedMillis = new AtomicLong();
+    private final AtomicLong totalGenerationMillis = new AtomicLong();
+
+    public KeyGenerationPool(int threads) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "key-generation-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //hands the generation off to the pool without waiting for it. the future completes on a pool thread, so follow on I/O
+    //should continue on the I/O executor rather than tie up a generation thread
+    public <T> CompletableFuture<T> generate(Callable<T> generator) {
+        long submitted = System.currentTimeMillis();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long started = System.currentTimeMillis();
+                totalQueuedMillis.addAndGet(started - submitted);
+                T result;
+                try {
+                    result = generator.call();
+                } catch (Throwable e) {
+                    generated(started);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                generated(started);
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void generated(long started) {
+        totalGenerationMillis.addAndGet(System.currentTimeMillis() - started);
+        generatedCounter.incrementAndGet();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public AtomicInteger getGeneratedCounter() {
+        return generatedCounter;
+    }
+
+    public AtomicLong getTotalQueuedMillis() {
+        return totalQueuedMillis;
+    }
+
+    public AtomicLong getTotalGenerationMillis() {
+        return totalGenerationMillis;
+    }
+}
@@ -0,0 +1,175 @@
+package com.bsycorp.kees;
+
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.ResolvedLeaseParameter;
+import com.bsycorp.kees.storage.StorageProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//keeps a bitmap of taken lease indexes per storage prefix and lease prefix, so finding a free index doesn't need a scan per pod.
+//the bitmap is only a hint, the conditional put in storage still decides who gets an index
+public class LeaseAllocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaseAllocator.class);
+
+    private final StorageProvider storageProvider;
+    private final ConcurrentHashMap<String, BitSet> leasedIndexes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger allocationCounter = new AtomicInteger();
+    private final AtomicInteger conflictCounter = new AtomicInteger();
+    private final AtomicInteger reseedCounter = new AtomicInteger();
+
+    public LeaseAllocator(StorageProvider storageProvider) {
+        this.storageProvider = storageProvider;
+    }
+
+    //reserves a free index in the parameters range for the holder, returns the index or null if the range is exhausted
+    public String allocate(String storagePrefix, LeaseParameter parameter, String holder) throws IOException {
+        String allocatorKey = getAllocatorKey(storagePrefix, parameter);
+        BitSet leased = leasedIndexes.computeIfAbsent(allocatorKey, k -> seed(storagePrefix, parameter));
+        boolean reseeded = false;
+
+        while (true) {
+            int index = reserve(leased, parameter.getRangeStart(), parameter.getRangeEnd());
+            if (index < 0) {
+                //range looks full, others may have released leases since we seeded so check storage once before giving up
+                if (reseeded) {
+                    return null;
+                }
+                reseed(leased, storagePrefix, parameter);
+                reseeded = true;
+                continue;
+            }
+
+            String leaseValue = String.valueOf(index);
+            try {
+                storageProvider.put(storagePrefix, new ResolvedLeaseParameter(parameter, leaseValue), holder, false);
+                allocationCounter.incrementAndGet();
+                return leaseValue;
+            } catch (RuntimeException e) {
+                if (storageProvider.getValueByKey(storagePrefix, new ResolvedLeaseParameter(parameter, leaseValue)) == null) {
+                    //nobody holds it so the put failed for some other reason, free it up again and let the caller retry
+                    release(storagePrefix, parameter, leaseValue);
+                    throw e;
+                }
+                //taken by someone we don't know about, leave it marked and try the next one
+                conflictCounter.incrementAndGet();
+                LOG.debug("Lease index {} for {} already taken, trying next", index, allocatorKey);
+            }
+        }
+    }
+
+    //tries a single index for the holder, returns true if the holder now has it, either from this put or from before
+    public boolean allocatePreferred(String storagePrefix, LeaseParameter parameter, String holder, int index) throws IOException {
+        ResolvedLeaseParameter preferred = new ResolvedLeaseParameter(parameter, String.valueOf(index));
+        try {
+            storageProvider.put(storagePrefix, preferred, holder, false);
+            allocationCounter.incrementAndGet();
+            mark(storagePrefix, parameter, index);
+            return true;
+        } catch (RuntimeException e) {
+            //restarted pods keep their name, so the slot may already be ours
+            String current = storageProvider.getValueByKey(storagePrefix, preferred);
+            if (current == null) {
+                //nobody holds it so the put failed for some other reason
+                throw e;
+            }
+            conflictCounter.incrementAndGet();
+            mark(storagePrefix, parameter, index);
+            return holder.equals(current);
+        }
+    }
+
+    private void mark(String storagePrefix, LeaseParameter parameter, int index) {
+        BitSet leased = leasedIndexes.get(getAllocatorKey(storagePrefix, parameter));
+        if (leased != null) {
+            synchronized (leased) {
+                leased.set(index);
+            }
+        }
+    }
+
+    //marks an index as free again after its lease has been deleted
+    public void release(String storagePrefix, LeaseParameter parameter, String leaseValue) {
+        BitSet leased = leasedIndexes.get(getAllocatorKey(storagePrefix, parameter));
+        Integer index = parseIndex(leaseValue);
+        if (leased != null && index != null) {
+            synchronized (leased) {
+                leased.clear(index);
+            }
+        }
+    }
+
+    private int reserve(BitSet leased, int rangeStart, int rangeEnd) {
+        synchronized (leased) {
+            int index = leased.nextClearBit(rangeStart);
+            if (index > rangeEnd) {
+                return -1;
+            }
+            leased.set(index);
+            return index;
+        }
+    }
+
+    private BitSet seed(String storagePrefix, LeaseParameter parameter) {
+        BitSet leased = new BitSet(parameter.getRangeEnd() + 1);
+        load(leased, storagePrefix, parameter);
+        return leased;
+    }
+
+    private void reseed(BitSet leased, String storagePrefix, LeaseParameter parameter) {
+        reseedCounter.incrementAndGet();
+        BitSet current = new BitSet(parameter.getRangeEnd() + 1);
+        load(current, storagePrefix, parameter);
+        synchronized (leased) {
+            leased.clear();
+            leased.or(current);
+        }
+    }
+
+    private void load(BitSet leased, String storagePrefix, LeaseParameter parameter) {
+        //keys look like <storagePrefix>/leases/<storageKeyPrefix>.<index>, the prefix lookup can also match longer lease prefixes so check the separator
+        String keyPrefix = parameter.getStorageFullPath(storagePrefix) + ".";
+        List<String> keys = storageProvider.getKeysByParameter(storagePrefix, parameter);
+        for (String key : keys) {
+            if (!key.startsWith(keyPrefix)) {
+                continue;
+            }
+            Integer index = parseIndex(key.substring(keyPrefix.length()));
+            if (index != null) {
+                leased.set(index);
+            }
+        }
+        LOG.info("Loaded {} existing leases for {}", leased.cardinality(), parameter.getStorageFullPath(storagePrefix));
+    }
+
+    private Integer parseIndex(String leaseValue) {
+        try {
+            int index = Integer.parseInt(leaseValue);
+            return index >= 0 ? index : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String getAllocatorKey(String storagePrefix, LeaseParameter parameter) {
+        return parameter.getStorageFullPath(storagePrefix);
+    }
+
+    public AtomicInteger getAllocationCounter() {
+        return allocationCounter;
+    }
+
+    public AtomicInteger getConflictCounter() {
+        return conflictCounter;
+    }
+
+    public AtomicInteger getReseedCounter() {
+        return reseedCounter;
+    }
+}
@@ -0,0 +1,252 @@
+package com.bsycorp.kees;
+
+import static com.bsycorp.kees.Utils.getAnnotationDomain;
+
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.Parameter;
+import com.bsycorp.kees.models.ResolvedLeaseParameter;
+import com.bsycorp.kees.storage.StorageProvider;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//housekeeping for leases whose DELETE event was missed, periodically removes leases held by pods that no longer exist
+public class LeaseReconciler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaseReconciler.class);
+
+    private final KubernetesClient client;
+    private final StorageProvider storageProvider;
+    private final LeaseAllocator leaseAllocator;
+    private final Locker leaseLocker;
+    private final AnnotationParser annotationParser = new AnnotationParser();
+    //lease prefixes seen on pods, keyed by lease storage path
+    private final Map<String, TrackedLease> trackedLeases = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private List<SharedIndexInformer<Pod>> podInformers = Collections.emptyList();
+    private boolean podInformersComplete;
+
+    private final long intervalSeconds;
+    private final int pageSize;
+    private final int maxDeletesPerRun;
+
+    private final AtomicInteger runCounter = new AtomicInteger();
+    private final AtomicInteger reclaimedCounter = new AtomicInteger();
+    private final AtomicLong lastDurationMillis = new AtomicLong();
+    private final AtomicLong totalDurationMillis = new AtomicLong();
+
+    public LeaseReconciler(KubernetesClient client, StorageProvider storageProvider, LeaseAllocator leaseAllocator) {
+        this(client, storageProvider, leaseAllocator, new Locker());
+    }
+
+    public LeaseReconciler(KubernetesClient client, StorageProvider storageProvider, LeaseAllocator leaseAllocator, Locker leaseLocker) {
+        this.client = client;
+        this.storageProvider = storageProvider;
+        this.leaseAllocator = leaseAllocator;
+        this.leaseLocker = leaseLocker;
+        this.intervalSeconds = getConfig("LEASE_RECONCILE_INTERVAL_SECONDS", 300);
+        this.pageSize = (int) getConfig("LEASE_RECONCILE_PAGE_SIZE", 500);
+        this.maxDeletesPerRun = (int) getConfig("LEASE_RECONCILE_MAX_DELETES", 50);
+    }
+
+    public void start() {
+        if (intervalSeconds <= 0) {
+            LOG.info("Lease reconciliation disabled");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lease-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //fixed delay so a slow run can't pile up behind itself
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (Exception e) {
+                LOG.error("Error reconciling leases", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    //once synced, pods are read from the informer cache instead of listing them from the API server. informers narrowed by a
+    //watch scope don't see every pod that can hold a lease, so then they are only used for the re-check before a delete
+    public void setPodInformers(List<SharedIndexInformer<Pod>> podInformers, boolean complete) {
+        this.podInformers = podInformers;
+        this.podInformersComplete = complete;
+    }
+
+    public void track(String storagePrefix, LeaseParameter parameter) {
+        trackedLeases.putIfAbsent(parameter.getStorageFullPath(storagePrefix), new TrackedLease(storagePrefix, parameter));
+    }
+
+    //returns the number of orphaned leases deleted
+    public int reconcile() {
+        long start = System.currentTimeMillis();
+        runCounter.incrementAndGet();
+
+        //snapshot leases before listing pods, a lease taken after this point can't be mistaken for an orphan because its pod is listed after
+        Map<TrackedLease, Map<String, String>> leases = new HashMap<>();
+        for (TrackedLease trackedLease : new ArrayList<>(trackedLeases.values())) {
+            leases.put(trackedLease, storageProvider.getEntriesByParameter(trackedLease.storagePrefix, trackedLease.parameter));
+        }
+        Set<String> livePods = listLivePods();
+
+        int reclaimed = 0;
+        for (Map.Entry<TrackedLease, Map<String, String>> entry : leases.entrySet()) {
+            TrackedLease trackedLease = entry.getKey();
+            String keyPrefix = trackedLease.parameter.getStorageFullPath(trackedLease.storagePrefix) + ".";
+
+            for (Map.Entry<String, String> lease : entry.getValue().entrySet()) {
+                //prefix lookup can also match longer lease prefixes, skip those
+                if (!lease.getKey().startsWith(keyPrefix) || livePods.contains(lease.getValue())) {
+                    continue;
+                }
+                if (reclaimed >= maxDeletesPerRun) {
+                    LOG.warn("Hit limit of {} lease deletes, leaving the rest for the next run", maxDeletesPerRun);
+                    break;
+                }
+
+                String leaseValue = lease.getKey().substring(keyPrefix.length());
+                String holder = lease.getValue();
+                //same lock the creator holds while handling the pods leases, so a pod recreated with the same name can't pick the lease up while it's being deleted
+                leaseLocker.lock(holder);
+                try {
+                    if (isCached(holder)) {
+                        continue;
+                    }
+                    //delete is conditional on the holder so a lease re-taken since the snapshot is left alone
+                    storageProvider.delete(trackedLease.storagePrefix, new ResolvedLeaseParameter(trackedLease.parameter, leaseValue), holder);
+                    leaseAllocator.release(trackedLease.storagePrefix, trackedLease.parameter, leaseValue);
+                    reclaimed++;
+                    LOG.info("Reclaimed orphaned lease {} held by missing pod {}", lease.getKey(), holder);
+                } catch (Exception e) {
+                    LOG.error("Error reclaiming lease: " + lease.getKey(), e);
+                } finally {
+                    leaseLocker.unlock(holder);
+                }
+            }
+        }
+
+        long duration = System.currentTimeMillis() - start;
+        reclaimedCounter.addAndGet(reclaimed);
+        lastDurationMillis.set(duration);
+        totalDurationMillis.addAndGet(duration);
+        LOG.info("Reconciled {} lease prefixes against {} pods, reclaimed {} leases, took {}ms", leases.size(), livePods.size(), reclaimed, duration);
+        //runs on an interval so it doubles as the reporting period for lease lock contention
+        List<String> hottestKeys = leaseLocker.drainHottestKeys(5);
+        if (!hottestKeys.isEmpty()) {
+            LOG.info("Most contended lease holders since the last run: {}", hottestKeys);
+        }
+        return reclaimed;
+    }
+
+    private Set<String> listLivePods() {
+        Set<String> livePods = new HashSet<>();
+        if (podInformersComplete && !podInformers.isEmpty() && podInformers.stream().allMatch(SharedIndexInformer::hasSynced)) {
+            for (SharedIndexInformer<Pod> podInformer : podInformers) {
+                for (Pod pod : podInformer.getIndexer().list()) {
+                    livePods.add(pod.getMetadata().getName());
+                    trackPod(pod);
+                }
+            }
+            return livePods;
+        }
+
+        //every pod in every namespace, a holder missing from this list is gone. if pods can't be listed cluster wide the run
+        //fails before anything is deleted
+        String continueToken = null;
+        do {
+            PodList page = client.pods().inAnyNamespace().list(new ListOptionsBuilder().withLimit((long) pageSize).withContinue(continueToken).build());
+            for (Pod pod : page.getItems()) {
+                livePods.add(pod.getMetadata().getName());
+                trackPod(pod);
+            }
+            continueToken = page.getMetadata() != null ? page.getMetadata().getContinue() : null;
+        } while (continueToken != null && !continueToken.isEmpty());
+        return livePods;
+    }
+
+    //re-checks the informer caches for a pod that appeared after the live pods were listed, looked up by the pod name index
+    //rather than scanning every cached pod for every lease
+    private boolean isCached(String podName) {
+        for (SharedIndexInformer<Pod> podInformer : podInformers) {
+            if (!podInformer.getIndexer().byIndex(CreateMain.POD_NAME_INDEX, podName).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //picks up lease prefixes from pods we haven't had events for, eg. after a restart
+    private void trackPod(Pod pod) {
+        Map<String, String> annotations = pod.getMetadata().getAnnotations();
+        if (annotations == null) {
+            return;
+        }
+        String storagePrefix = annotations.get("init." + getAnnotationDomain() + "/storage-prefix");
+        if (storagePrefix == null) {
+            return;
+        }
+        List<Parameter> parameters = annotationParser.parseMap(annotations);
+        for (Parameter parameter : parameters) {
+            if (parameter instanceof LeaseParameter) {
+                track(storagePrefix, (LeaseParameter) parameter);
+            }
+        }
+    }
+
+    private long getConfig(String name, long defaultValue) {
+        String value = Utils.getEnvironment().get(name);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    public AtomicInteger getRunCounter() {
+        return runCounter;
+    }
+
+    public AtomicInteger getReclaimedCounter() {
+        return reclaimedCounter;
+    }
+
+    public AtomicLong getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    public AtomicLong getTotalDurationMillis() {
+        return totalDurationMillis;
+    }
+
+    private static class TrackedLease {
+        private final String storagePrefix;
+        private final LeaseParameter parameter;
+
+        TrackedLease(String storagePrefix, LeaseParameter parameter) {
+            this.storagePrefix = storagePrefix;
+            this.parameter = parameter;
+        }
+    }
+}
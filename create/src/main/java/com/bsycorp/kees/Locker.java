@@ -1,24 +1,141 @@
 package com.bsycorp.kees;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
+//fixed set of lock stripes that keys hash onto, so memory stays bounded however many keys are seen.
+//keys sharing a stripe can block each other, size the stripes well above the expected number of concurrent keys
 public class Locker {
-    private ConcurrentHashMap<String, Lock> locks;
 
-    public Locker(){
-        locks = new ConcurrentHashMap<>();
+    private static final int DEFAULT_STRIPES = 256;
+    private static final int MAX_TRACKED_KEYS = 1000;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    private final AtomicLong acquiredCounter = new AtomicLong();
+    private final AtomicLong contendedCounter = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHoldNanos = new AtomicLong();
+    private final AtomicLongArray stripeWaitNanos;
+    private final AtomicLongArray lockedAt;
+    //wait time per key for keys that had to wait, capped so it can't grow without bound. keys contended once the cap is
+    //reached aren't recorded until the next drain
+    private final Map<String, AtomicLong> contendedKeys = new ConcurrentHashMap<>();
+
+    public Locker() {
+        this(DEFAULT_STRIPES);
     }
 
+    public Locker(int stripeCount) {
+        //round up to a power of two so a stripe can be picked with a mask
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+        stripeWaitNanos = new AtomicLongArray(size);
+        lockedAt = new AtomicLongArray(size);
+    }
+
+    //returns the lock for the key, the same lock instance every time and no allocation
     public Lock getLock(String key) {
-        Lock initValue = new ReentrantLock();
-        //returns the current lock or null if was absent
-        Lock lock = locks.putIfAbsent(key, initValue);
-        if (lock == null) {
-            lock = initValue;
+        return stripes[stripeFor(key)];
+    }
+
+    //acquires the key's lock recording wait and hold times, release with unlock(key)
+    public void lock(String key) {
+        int stripe = stripeFor(key);
+        ReentrantLock lock = stripes[stripe];
+        if (lock.tryLock()) {
+            acquired(stripe, 0);
+            return;
+        }
+
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        contendedCounter.incrementAndGet();
+        stripeWaitNanos.addAndGet(stripe, waited);
+        AtomicLong keyWait = contendedKeys.get(key);
+        if (keyWait == null && contendedKeys.size() < MAX_TRACKED_KEYS) {
+            keyWait = contendedKeys.computeIfAbsent(key, k -> new AtomicLong());
+        }
+        if (keyWait != null) {
+            keyWait.addAndGet(waited);
+        }
+        acquired(stripe, waited);
+    }
+
+    public void unlock(String key) {
+        int stripe = stripeFor(key);
+        ReentrantLock lock = stripes[stripe];
+        //only the outermost hold is timed for reentrant use
+        if (lock.getHoldCount() == 1) {
+            totalHoldNanos.addAndGet(System.nanoTime() - lockedAt.get(stripe));
+        }
+        lock.unlock();
+    }
+
+    private void acquired(int stripe, long waited) {
+        if (stripes[stripe].getHoldCount() == 1) {
+            lockedAt.set(stripe, System.nanoTime());
         }
-        return lock;
+        acquiredCounter.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
     }
 
+    private int stripeFor(String key) {
+        int hash = key.hashCode();
+        //spread the high bits like HashMap does, string hashes often differ mostly in them
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    //keys that waited the longest in total, most contended first
+    public List<String> getHottestKeys(int limit) {
+        List<Map.Entry<String, AtomicLong>> entries = new ArrayList<>(contendedKeys.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, AtomicLong> entry) -> entry.getValue().get()).reversed());
+        return entries.stream().limit(limit).map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    //returns the hottest keys and starts tracking afresh, call once per reporting period so the cap on tracked keys
+    //doesn't stop new keys being recorded after the first busy period
+    public List<String> drainHottestKeys(int limit) {
+        List<String> hottestKeys = getHottestKeys(limit);
+        contendedKeys.clear();
+        return hottestKeys;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public long getStripeWaitNanos(int stripe) {
+        return stripeWaitNanos.get(stripe);
+    }
+
+    public AtomicLong getAcquiredCounter() {
+        return acquiredCounter;
+    }
+
+    public AtomicLong getContendedCounter() {
+        return contendedCounter;
+    }
+
+    public AtomicLong getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public AtomicLong getTotalHoldNanos() {
+        return totalHoldNanos;
+    }
 }
@@ -0,0 +1,97 @@
+package com.bsycorp.kees;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.Pod;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//the parts of a pod the creator uses, taken from the pod as soon as an event arrives so spec and status aren't held while queued
+public final class PodDescriptor {
+
+    private final String name;
+    private final String namespace;
+    private final String uid;
+    private final String resourceVersion;
+    private final Map<String, String> annotations;
+    private final Map<String, String> labels;
+    private final List<Owner> ownerReferences;
+
+    public PodDescriptor(String name, String namespace, String uid, String resourceVersion,
+                         Map<String, String> annotations, Map<String, String> labels, List<Owner> ownerReferences) {
+        this.name = name;
+        this.namespace = namespace;
+        this.uid = uid;
+        this.resourceVersion = resourceVersion;
+        this.annotations = annotations == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(annotations));
+        this.labels = labels == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(labels));
+        this.ownerReferences = ownerReferences == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(ownerReferences));
+    }
+
+    public static PodDescriptor from(Pod pod) {
+        ObjectMeta metadata = pod.getMetadata();
+        List<Owner> owners = new ArrayList<>();
+        if (metadata.getOwnerReferences() != null) {
+            for (OwnerReference owner : metadata.getOwnerReferences()) {
+                owners.add(new Owner(owner.getKind(), owner.getName(), owner.getUid()));
+            }
+        }
+        return new PodDescriptor(metadata.getName(), metadata.getNamespace(), metadata.getUid(), metadata.getResourceVersion(),
+                metadata.getAnnotations(), metadata.getLabels(), owners);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    public Map<String, String> getAnnotations() {
+        return annotations;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public List<Owner> getOwnerReferences() {
+        return ownerReferences;
+    }
+
+    public static final class Owner {
+        private final String kind;
+        private final String name;
+        private final String uid;
+
+        public Owner(String kind, String name, String uid) {
+            this.kind = kind;
+            this.name = name;
+            this.uid = uid;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.bsycorp.kees;
+
+import io.fabric8.kubernetes.client.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//queues pod events per namespace/name so only one event per pod is worked on at a time.
+//pending ADDED/MODIFIED events for a pod collapse into the latest one, DELETED is kept in order so it never overtakes an earlier upsert.
+//a pod's events are handled at most once per minimum interval, a pod whose annotations keep changing has them collapsed in the meantime
+public class PodWorkQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PodWorkQueue.class);
+
+    public interface Handler {
+        //completes with false if the event should be retried, the pod's next event waits for it but the worker doesn't
+        CompletableFuture<Boolean> handle(Watcher.Action action, PodDescriptor pod);
+    }
+
+    private final Handler handler;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService retryScheduler;
+    private final long minIntervalMillis;
+    private final int maxRetries;
+    private final long baseRetryDelayMillis;
+    private final long maxRetryDelayMillis;
+
+    //guarded by this, a key is active while a worker is draining it or a retry is scheduled
+    private final Map<String, Deque<PodEvent>> pending = new HashMap<>();
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger coalescedCounter = new AtomicInteger();
+    private final AtomicInteger processedCounter = new AtomicInteger();
+    private final AtomicInteger retryCounter = new AtomicInteger();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong totalHandleMillis = new AtomicLong();
+
+    public PodWorkQueue(Handler handler, ExecutorService executorService) {
+        this.handler = handler;
+        this.executorService = executorService;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pod-queue-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.minIntervalMillis = getConfig("EVENT_MIN_INTERVAL_MILLIS", 1000);
+        this.maxRetries = (int) getConfig("EVENT_MAX_RETRIES", 5);
+        this.baseRetryDelayMillis = getConfig("EVENT_RETRY_BASE_DELAY_MILLIS", 500);
+        this.maxRetryDelayMillis = getConfig("EVENT_RETRY_MAX_DELAY_MILLIS", 60000);
+    }
+
+    //returns false if the event was folded into one already pending for the pod
+    public boolean add(Watcher.Action action, PodDescriptor pod) {
+        String key = getKey(pod);
+        PodEvent event = new PodEvent(action, pod);
+        boolean startDrain;
+
+        synchronized (this) {
+            Deque<PodEvent> events = pending.get(key);
+            startDrain = events == null;
+            if (startDrain) {
+                events = new ArrayDeque<>();
+                pending.put(key, events);
+            }
+
+            PodEvent last = events.peekLast();
+            if (last != null && !last.inProgress && isUpsert(last.action) == isUpsert(action)) {
+                //same kind of event still waiting, the newer pod state replaces it but keeps its place in the queue
+                last.action = action;
+                last.pod = pod;
+                coalescedCounter.incrementAndGet();
+                return false;
+            }
+            events.addLast(event);
+            depth.incrementAndGet();
+        }
+
+        if (startDrain) {
+            executorService.submit(() -> drain(key));
+        }
+        return true;
+    }
+
+    private void drain(String key) {
+        while (true) {
+            PodEvent event;
+            synchronized (this) {
+                Deque<PodEvent> events = pending.get(key);
+                event = events.peekFirst();
+                if (event == null) {
+                    pending.remove(key);
+                    return;
+                }
+                event.inProgress = true;
+            }
+
+            long waited = System.currentTimeMillis() - event.enqueuedAt;
+            totalWaitMillis.addAndGet(waited);
+            maxWaitMillis.accumulateAndGet(waited, Math::max);
+
+            long started = System.currentTimeMillis();
+            CompletableFuture<Boolean> result;
+            try {
+                result = handler.handle(event.action, event.pod);
+            } catch (Exception e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+
+            if (!result.isDone()) {
+                //still waiting on key generation, give the worker back and carry on with the pod once it's done
+                CompletableFuture<Boolean> pendingResult = result;
+                result.whenComplete((success, e) -> executorService.submit(() -> {
+                    if (completed(key, event, pendingResult, started) && readyForNext(key, started)) {
+                        drain(key);
+                    }
+                }));
+                return;
+            }
+            if (!completed(key, event, result, started) || !readyForNext(key, started)) {
+                return;
+            }
+        }
+    }
+
+    //returns true if the pod's next event can be handled straight away, false if a retry has been scheduled
+    private boolean completed(String key, PodEvent event, CompletableFuture<Boolean> result, long started) {
+        boolean success;
+        try {
+            success = result.join();
+        } catch (Exception e) {
+            LOG.error("Error handling event for pod: " + key, e.getCause() != null ? e.getCause() : e);
+            success = false;
+        }
+        totalHandleMillis.addAndGet(System.currentTimeMillis() - started);
+        processedCounter.incrementAndGet();
+
+        synchronized (this) {
+            Deque<PodEvent> events = pending.get(key);
+            int attempts = success ? 0 : failures.getOrDefault(key, 0) + 1;
+            if (success || attempts > maxRetries) {
+                if (!success) {
+                    LOG.error("Giving up on {} event for pod {} after {} attempts", event.action, key, attempts);
+                }
+                failures.remove(key);
+                events.pollFirst();
+                depth.decrementAndGet();
+                return true;
+            }
+
+            failures.put(key, attempts);
+            event.inProgress = false;
+            Iterator<PodEvent> iterator = events.iterator();
+            iterator.next();
+            PodEvent next = iterator.hasNext() ? iterator.next() : null;
+            if (next != null && isUpsert(next.action) == isUpsert(event.action)) {
+                //a newer state for the same kind of event arrived while we were failing, retry with that instead
+                events.pollFirst();
+                depth.decrementAndGet();
+            }
+
+            //back off exponentially per pod, leaving the key active so nothing else for the pod runs in between
+            long delay = Math.min(maxRetryDelayMillis, baseRetryDelayMillis << Math.min(attempts - 1, 20));
+            retryCounter.incrementAndGet();
+            LOG.warn("Retrying {} event for pod {} in {}ms, attempt {}", event.action, key, delay, attempts);
+            retryScheduler.schedule(() -> executorService.submit(() -> drain(key)), delay, TimeUnit.MILLISECONDS);
+            return false;
+        }
+    }
+
+    //returns true if the pod's next event can be handled now, otherwise the key is left active and drained once the minimum
+    //interval since the last event started has passed, events arriving until then collapse into the one waiting
+    private boolean readyForNext(String key, long started) {
+        long wait = started + minIntervalMillis - System.currentTimeMillis();
+        if (wait <= 0) {
+            return true;
+        }
+        retryScheduler.schedule(() -> executorService.submit(() -> drain(key)), wait, TimeUnit.MILLISECONDS);
+        return false;
+    }
+
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    private boolean isUpsert(Watcher.Action action) {
+        return action != Watcher.Action.DELETED;
+    }
+
+    static String getKey(PodDescriptor pod) {
+        return pod.getNamespace() + "/" + pod.getName();
+    }
+
+    private long getConfig(String name, long defaultValue) {
+        String value = Utils.getEnvironment().get(name);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    public AtomicInteger getDepth() {
+        return depth;
+    }
+
+    public AtomicInteger getCoalescedCounter() {
+        return coalescedCounter;
+    }
+
+    public AtomicInteger getProcessedCounter() {
+        return processedCounter;
+    }
+
+    public AtomicInteger getRetryCounter() {
+        return retryCounter;
+    }
+
+    public AtomicLong getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    public AtomicLong getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public AtomicLong getTotalHandleMillis() {
+        return totalHandleMillis;
+    }
+
+    private static class PodEvent {
+        private Watcher.Action action;
+        private PodDescriptor pod;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private boolean inProgress;
+
+        PodEvent(Watcher.Action action, PodDescriptor pod) {
+            this.action = action;
+            this.pod = pod;
+        }
+    }
+}
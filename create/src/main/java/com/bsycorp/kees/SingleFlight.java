@@ -0,0 +1,53 @@
+package com.bsycorp.kees;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//runs at most one call per key at a time, callers arriving while it is in flight share its result instead of repeating it.
+//nothing waits here, the call returns a future and every caller gets one completed with its result
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger executionCounter = new AtomicInteger();
+    private final AtomicInteger sharedCounter = new AtomicInteger();
+
+    public CompletableFuture<V> execute(K key, Callable<CompletableFuture<V>> callable) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            sharedCounter.incrementAndGet();
+            return existing;
+        }
+
+        executionCounter.incrementAndGet();
+        CompletableFuture<V> result;
+        try {
+            result = callable.call();
+        } catch (Exception e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((value, e) -> {
+            //removed first so failures aren't shared beyond the callers already waiting, the next caller tries again
+            inFlight.remove(key, future);
+            if (e != null) {
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
+    public AtomicInteger getExecutionCounter() {
+        return executionCounter;
+    }
+
+    public AtomicInteger getSharedCounter() {
+        return sharedCounter;
+    }
+}
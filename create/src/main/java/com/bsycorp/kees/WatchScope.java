@@ -0,0 +1,97 @@
+package com.bsycorp.kees;
+
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//which pods the creator watches, by default every pod in every namespace.
+//narrowing it moves the filtering to the API server so the creator only sees pods that use kees
+public class WatchScope {
+
+    private final List<String> namespaces = new ArrayList<>();
+    private final Map<String, String> labels = new HashMap<>();
+    private final Map<String, String[]> labelsNot = new HashMap<>();
+
+    public static WatchScope fromEnvironment() {
+        Map<String, String> environment = Utils.getEnvironment();
+        WatchScope scope = new WatchScope();
+
+        String namespaces = environment.get("WATCH_NAMESPACES");
+        if (namespaces != null) {
+            for (String namespace : namespaces.split(",")) {
+                if (!namespace.trim().isEmpty()) {
+                    scope.namespaces.add(namespace.trim());
+                }
+            }
+        }
+
+        //opt-in mode only watches pods carrying the label build tooling adds
+        if ("true".equals(environment.get("WATCH_OPT_IN"))) {
+            scope.labels.put(Utils.getWatchLabel(), "true");
+        }
+
+        String selector = environment.get("WATCH_LABEL_SELECTOR");
+        if (selector != null) {
+            scope.parseSelector(selector);
+        }
+        return scope;
+    }
+
+    //supports equality based selectors only, eg. 'team=payments,tier!=batch'
+    private void parseSelector(String selector) {
+        for (String requirement : selector.split(",")) {
+            requirement = requirement.trim();
+            if (requirement.isEmpty()) {
+                continue;
+            }
+            if (requirement.contains("!=")) {
+                String[] parts = requirement.split("!=", 2);
+                labelsNot.put(parts[0].trim(), new String[]{parts[1].trim()});
+            } else if (requirement.contains("=")) {
+                String[] parts = requirement.split("==?", 2);
+                labels.put(parts[0].trim(), parts[1].trim());
+            } else {
+                throw new IllegalArgumentException("Unsupported label selector requirement: " + requirement);
+            }
+        }
+    }
+
+    //empty means all namespaces
+    public List<String> getNamespaces() {
+        return Collections.unmodifiableList(namespaces);
+    }
+
+    public Map<String, String> getLabels() {
+        return Collections.unmodifiableMap(labels);
+    }
+
+    //true when every pod in the cluster is watched
+    public boolean isUnrestricted() {
+        return namespaces.isEmpty() && labels.isEmpty() && labelsNot.isEmpty();
+    }
+
+    public OperationContext toOperationContext() {
+        OperationContext context = new OperationContext();
+        if (!labels.isEmpty()) {
+            context = context.withLabels(labels);
+        }
+        if (!labelsNot.isEmpty()) {
+            context = context.withLabelsNot(labelsNot);
+        }
+        return context;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("namespaces: ").append(namespaces.isEmpty() ? "all" : String.join(",", namespaces));
+        result.append(", labels: ").append(labels);
+        for (Map.Entry<String, String[]> entry : labelsNot.entrySet()) {
+            result.append(", ").append(entry.getKey()).append("!=").append(entry.getValue()[0]);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        BoundedCache<String, Boolean> cache = new BoundedCache<>(2);
+        cache.put("a", true);
+        cache.put("b", true);
+        cache.get("a");
+        cache.put("c", true);
+
+        assertNull(cache.get("b"));
+        assertEquals(true, cache.get("a"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCounter().get());
+        assertEquals(1, cache.getMissCounter().get());
+    }
+
+    @Test
+    public void shouldExpirePositiveAndNegativeEntriesSeparately() {
+        final long[] now = {1000};
+        BoundedCache<String, Boolean> cache = new BoundedCache<String, Boolean>(10) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        cache.put("local/common.key", true, 60000);
+        cache.put("local/app.db", false, 10000);
+
+        now[0] += 10000;
+        assertEquals(true, cache.get("local/common.key"));
+        assertNull(cache.get("local/app.db"));
+
+        now[0] += 50000;
+        assertNull(cache.get("local/common.key"));
+        assertEquals(2, cache.getExpirationCounter().get());
+        assertEquals(1, cache.getHitCounter().get());
+        assertEquals(0, cache.size());
+    }
+}
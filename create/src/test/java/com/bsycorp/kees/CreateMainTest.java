@@ -2,15 +2,21 @@ package com.bsycorp.kees;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.bsycorp.kees.data.RandomDataProvider;
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.SecretParameter;
+import com.bsycorp.kees.models.SecretTypeEnum;
 import com.bsycorp.kees.storage.DynamoDBStorageProvider;
 import com.bsycorp.kees.storage.InMemoryStorageProvider;
 import com.bsycorp.kees.storage.StorageProvider;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodBuilder;
 import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
@@ -20,8 +26,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
 public class CreateMainTest {
@@ -154,6 +162,56 @@ public class CreateMainTest {
 
     }
 
+    @Test(timeout = 10000)
+    public void shouldOnlyWatchLabelledPodsInOptInMode() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+        Map<String, String> environment = new HashMap<>();
+        environment.put("WATCH_OPT_IN", "true");
+        Utils.setEnvironment(environment);
+
+        try {
+            Map<String, String> annotations = new HashMap<>();
+            annotations.put("init.bsycorp.com/storage-prefix", "local");
+            annotations.put("secret.bsycorp.com/common.key", "kind=DYNAMIC,type=RANDOM,size=288");
+
+            executorService.submit(() -> {
+                try {
+                    createMain.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+
+            Thread.sleep(500);
+            server.getClient().pods().create(new PodBuilder()
+                    .withNewMetadata()
+                    .withName("unlabelled")
+                    .withAnnotations(annotations)
+                    .endMetadata()
+                    .build());
+            server.getClient().pods().create(new PodBuilder()
+                    .withNewMetadata()
+                    .withName("labelled")
+                    .withAnnotations(annotations)
+                    .addToLabels(Utils.getWatchLabel(), "true")
+                    .endMetadata()
+                    .build());
+
+            while (createMain.getEventCounter().get() < 1) {
+                Thread.sleep(500);
+            }
+            Thread.sleep(500);
+
+            assertEquals(1, createMain.getEventCounter().get());
+            assertEquals(1, createMain.getCachedPodsByName("labelled").size());
+            assertEquals(0, createMain.getCachedPodsByName("unlabelled").size());
+            assertTrue(storageProvider.getStore().containsKey("local/common.key"));
+        } finally {
+            Utils.setEnvironment(null);
+        }
+    }
+
     @Test
     public void shouldFindOneModifiedMatchingPod() throws Exception {
         InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
@@ -212,6 +270,273 @@ public class CreateMainTest {
         assertEquals(10, storageProvider.getStore().size());
         //high watermark is 12, because the leases _were_ added but then removed.
         assertEquals(12, storageProvider.getStoreHighwaterMark());
+        //label change doesn't touch our annotations so is dropped before handling
+        assertEquals(1, createMain.getDroppedEventCounter().get());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldOnlyHandleLeasesForPodsOfReconciledTemplate() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+
+        Map<String, String> annotations = new HashMap<>();
+        annotations.put("init.bsycorp.com/storage-prefix", "local");
+        annotations.put("secret.bsycorp.com/common.key", "kind=DYNAMIC,type=RANDOM,size=288");
+        annotations.put("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=1000");
+
+        executorService.submit(() -> {
+            try {
+                createMain.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+
+        Thread.sleep(500);
+        for (String name : new String[]{"web-7d4b9-a", "web-7d4b9-b"}) {
+            server.getClient().pods().create(new PodBuilder()
+                    .withNewMetadata()
+                    .withName(name)
+                    .withAnnotations(annotations)
+                    .addToLabels("pod-template-hash", "7d4b9")
+                    .addNewOwnerReference().withKind("ReplicaSet").withName("web-7d4b9").withUid("rs-uid").endOwnerReference()
+                    .endMetadata()
+                    .build());
+            while (createMain.getEventCounter().get() < (name.endsWith("a") ? 1 : 2)) {
+                Thread.sleep(100);
+            }
+        }
+
+        //second pod only needed its lease
+        assertEquals(1, createMain.getReconciledTemplates().getHitCounter().get());
+        assertEquals(1, createMain.getSecretFlight().getExecutionCounter().get());
+        assertEquals("web-7d4b9-a", storageProvider.getStore().get("local/leases/snowflake.0"));
+        assertEquals("web-7d4b9-b", storageProvider.getStore().get("local/leases/snowflake.1"));
+        assertEquals(0, createMain.getExceptionCounter().get());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldHandleOtherPodsWhileKeysGenerate() throws Exception {
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        //one I/O worker, other pods can only be handled if it isn't held waiting on the slow key
+        environment.put("IO_THREADS", "1");
+        environment.put("KEY_GENERATION_THREADS", "1");
+        Utils.setEnvironment(environment);
+        CountDownLatch generating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            createMain.shutdown();
+            createMain = new CreateMain();
+            createMain.setClient(server.getClient());
+            InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+            createMain.setStorageProvider(storageProvider);
+            createMain.setDataProvider(new RandomDataProvider() {
+                @Override
+                public String[] generatePairedBase64Encoded(SecretTypeEnum type, String annotationName, int size, String userId, String algorithm) {
+                    generating.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new String[]{"public", "private"};
+                }
+            });
+
+            executorService.submit(() -> {
+                try {
+                    createMain.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            Thread.sleep(500);
+
+            Map<String, String> slowAnnotations = new HashMap<>();
+            slowAnnotations.put("init.bsycorp.com/storage-prefix", "local");
+            slowAnnotations.put("secret.bsycorp.com/service-key.v1_public", "kind=DYNAMIC,type=RSA,size=2048");
+            server.getClient().pods().create(new PodBuilder().withNewMetadata().withName("slow").withAnnotations(slowAnnotations).endMetadata().build());
+            assertTrue(generating.await(5, TimeUnit.SECONDS));
+
+            Map<String, String> otherAnnotations = new HashMap<>();
+            otherAnnotations.put("init.bsycorp.com/storage-prefix", "local");
+            otherAnnotations.put("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+            server.getClient().pods().create(new PodBuilder().withNewMetadata().withName("other").withAnnotations(otherAnnotations).endMetadata().build());
+            while (!"other".equals(storageProvider.getStore().get("local/leases/snowflake.0"))) {
+                Thread.sleep(10);
+            }
+            //handled while the key was still being generated
+            assertEquals(1, createMain.getEventCounter().get());
+
+            release.countDown();
+            while (createMain.getEventCounter().get() < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals("private", storageProvider.getStore().get("local/service-key.v1_private"));
+            assertEquals(0, createMain.getExceptionCounter().get());
+        } finally {
+            release.countDown();
+            Utils.setEnvironment(null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldCloseNamespacedClientsOnShutdown() throws Exception {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("WATCH_NAMESPACES", "test,other");
+        Utils.setEnvironment(environment);
+        try {
+            executorService.submit(() -> {
+                try {
+                    createMain.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            while (createMain.getNamespacedClients().size() < 2) {
+                Thread.sleep(100);
+            }
+
+            createMain.shutdown();
+            assertTrue(createMain.getNamespacedClients().isEmpty());
+            //the injected client is left for its owner to close
+            server.getClient().pods().list();
+        } finally {
+            Utils.setEnvironment(null);
+        }
+    }
+
+    @Test
+    public void shouldOnlyGiveStatefulSetPodsTheirOrdinalLease() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=ORDINAL,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        createMain.handleLeaseParameterUpsert(parameter, PodDescriptor.from(ownedPod("db-3", "StatefulSet")), "local");
+        assertEquals("db-3", storageProvider.getStore().get("local/leases/snowflake.3"));
+
+        //deployment pods can have names ending in a number too, they get the next free index
+        createMain.handleLeaseParameterUpsert(parameter, PodDescriptor.from(ownedPod("web-5", "ReplicaSet")), "local");
+        assertEquals("web-5", storageProvider.getStore().get("local/leases/snowflake.0"));
+        assertEquals(null, storageProvider.getStore().get("local/leases/snowflake.5"));
+    }
+
+    @Test
+    public void shouldKeepExistingLeaseOverOrdinalLease() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=ORDINAL,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+        //leased before the set moved to ordinal leases
+        storageProvider.getStore().put("local/leases/snowflake.7", "db-3");
+
+        createMain.handleLeaseParameterUpsert(parameter, PodDescriptor.from(ownedPod("db-3", "StatefulSet")), "local");
+        assertEquals(1, storageProvider.getStore().size());
+        assertEquals("db-3", storageProvider.getStore().get("local/leases/snowflake.7"));
+    }
+
+    @Test
+    public void shouldFailLeaseWhenRangeExhausted() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=0");
+        storageProvider.getStore().put("local/leases/snowflake.0", "web-a");
+
+        try {
+            createMain.handleLeaseParameterUpsert(parameter, PodDescriptor.from(ownedPod("web-b", "ReplicaSet")), "local");
+            fail("Expected lease to fail");
+        } catch (RuntimeException e) {
+            //expected, retried by the work queue
+        }
+        assertEquals(null, createMain.getProcessedCache().get("local/snowflake@test/web-b"));
+
+        //freed up by the time of the retry
+        storageProvider.getStore().remove("local/leases/snowflake.0");
+        createMain.handleLeaseParameterUpsert(parameter, PodDescriptor.from(ownedPod("web-b", "ReplicaSet")), "local");
+        assertEquals("web-b", storageProvider.getStore().get("local/leases/snowflake.0"));
+    }
+
+    @Test
+    public void shouldOnlyShareSecretFlightForFieldsGeneratedTogether() throws Exception {
+        //separate secrets that happen to share a base name
+        assertEquals("local/db_user", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/db_user", "kind=DYNAMIC,type=RANDOM,size=128"), "local"));
+        assertEquals("local/db_password", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/db_password", "kind=DYNAMIC,type=PASSWORD,size=16"), "local"));
+
+        //both fields come out of one generation
+        assertEquals("local/service-key.v1", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/service-key.v1_public", "kind=DYNAMIC,type=RSA,size=2048"), "local"));
+        assertEquals("local/service-key.v1", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/service-key.v1_private", "kind=DYNAMIC,type=RSA,size=2048"), "local"));
+        assertEquals("local/api-key.v1", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/api-key.v1_consumer", "kind=DYNAMIC,type=RANDOM,size=128"), "local"));
+        assertEquals("local/api-key.v1", createMain.getSecretKey(new SecretParameter("secret.bsycorp.com/api-key.v1_provider", "kind=DYNAMIC,type=RANDOM,size=128"), "local"));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldCreateEachFieldSharingBaseName() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        createMain.setStorageProvider(storageProvider);
+
+        executorService.submit(() -> {
+            try {
+                createMain.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        Thread.sleep(500);
+
+        //the second field arrives in a later pod, after the first has been stored and cached
+        String[] fields = {"db_user", "db_password"};
+        for (int i = 0; i < fields.length; i++) {
+            Map<String, String> annotations = new HashMap<>();
+            annotations.put("init.bsycorp.com/storage-prefix", "local");
+            annotations.put("secret.bsycorp.com/" + fields[i], "kind=DYNAMIC,type=RANDOM,size=128");
+            server.getClient().pods().create(new PodBuilder().withNewMetadata().withName("app-" + i).withAnnotations(annotations).endMetadata().build());
+            while (createMain.getEventCounter().get() < i + 1) {
+                Thread.sleep(100);
+            }
+        }
+
+        assertTrue(storageProvider.getStore().containsKey("local/db_user"));
+        assertTrue(storageProvider.getStore().containsKey("local/db_password"));
+        assertEquals(2, createMain.getSecretFlight().getExecutionCounter().get());
+        assertEquals(0, createMain.getExceptionCounter().get());
+    }
+
+    private Pod ownedPod(String name, String ownerKind) {
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace("test")
+                .addNewOwnerReference().withKind(ownerKind).withName(name.substring(0, name.lastIndexOf("-"))).withUid("owner-uid").endOwnerReference()
+                .endMetadata()
+                .build();
+    }
+
+    @Test
+    public void shouldOnlyKeyTemplatesForOwnedPods() {
+        Pod pod = new PodBuilder()
+                .withNewMetadata()
+                .withName("web-7d4b9-a")
+                .withNamespace("test")
+                .addToLabels("pod-template-hash", "7d4b9")
+                .endMetadata()
+                .build();
+        assertEquals(null, CreateMain.getTemplateKey(PodDescriptor.from(pod)));
+
+        pod.getMetadata().getOwnerReferences().add(new OwnerReferenceBuilder().withKind("ReplicaSet").withUid("rs-uid").build());
+        assertTrue(CreateMain.getTemplateKey(PodDescriptor.from(pod)).startsWith("test/rs-uid/7d4b9/"));
+    }
+
+    @Test
+    public void shouldOnlyDigestKeesAnnotations() {
+        Map<String, String> annotations = new HashMap<>();
+        annotations.put("init.bsycorp.com/storage-prefix", "/bsycorp/testbed");
+        annotations.put("secret.bsycorp.com/common.key", "kind=DYNAMIC,type=RANDOM,size=288");
+        long digest = CreateMain.getAnnotationDigest(annotations);
+
+        annotations.put("kubernetes.io/psp", "eks.privileged");
+        assertEquals(digest, CreateMain.getAnnotationDigest(annotations));
+
+        annotations.put("secret.bsycorp.com/common.key", "kind=DYNAMIC,type=RANDOM,size=256");
+        assertTrue(digest != CreateMain.getAnnotationDigest(annotations));
     }
 
     @Test
@@ -0,0 +1,68 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class KeyGenerationPoolTest {
+
+    @Test
+    public void shouldGenerateOffCallerThread() throws Exception {
+        KeyGenerationPool pool = new KeyGenerationPool(1);
+        try {
+            String thread = pool.generate(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+            assertTrue(thread.startsWith("key-generation-"));
+            assertEquals(1, pool.getGeneratedCounter().get());
+            assertEquals(0, pool.getQueueLength());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldPassGenerationFailuresToCaller() throws Exception {
+        KeyGenerationPool pool = new KeyGenerationPool(1);
+        try {
+            pool.generate(() -> {
+                throw new IllegalStateException("bad key size");
+            }).get(5, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("bad key size", e.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotBlockCallerWhileGenerating() throws Exception {
+        KeyGenerationPool pool = new KeyGenerationPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> slow = pool.generate(() -> {
+                release.await();
+                return "slow";
+            });
+            //returned straight away, the second generation queues behind the first
+            CompletableFuture<String> queued = pool.generate(() -> "queued");
+            assertFalse(slow.isDone());
+            assertFalse(queued.isDone());
+
+            release.countDown();
+            assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+            assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(2, pool.getGeneratedCounter().get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
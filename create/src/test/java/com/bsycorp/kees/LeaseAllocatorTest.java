@@ -0,0 +1,121 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.Parameter;
+import com.bsycorp.kees.storage.InMemoryStorageProvider;
+import org.junit.Test;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+public class LeaseAllocatorTest {
+
+    @Test
+    public void shouldSkipLeasesAlreadyInStorage() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        IntStream.range(0, 5).forEach(i -> storageProvider.getStore().put("local/leases/snowflake." + i, "pod-" + i));
+        //longer prefix sharing the same start shouldn't count as taken
+        storageProvider.getStore().put("local/leases/snowflake2.5", "pod-other");
+        LeaseAllocator allocator = new LeaseAllocator(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        assertEquals("5", allocator.allocate("local", parameter, "pod-a"));
+        assertEquals("6", allocator.allocate("local", parameter, "pod-b"));
+        assertEquals("pod-b", storageProvider.getStore().get("local/leases/snowflake.6"));
+        assertEquals(2, allocator.getAllocationCounter().get());
+        assertEquals(0, allocator.getConflictCounter().get());
+        //seeded once, not per allocation
+        assertEquals(1, storageProvider.getStoreGetCounter());
+    }
+
+    @Test
+    public void shouldCountConflictsAndMoveOn() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        LeaseAllocator allocator = new LeaseAllocator(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        assertEquals("0", allocator.allocate("local", parameter, "pod-a"));
+        //another creator takes the next index behind our back
+        storageProvider.getStore().put("local/leases/snowflake.1", "pod-elsewhere");
+
+        assertEquals("2", allocator.allocate("local", parameter, "pod-b"));
+        assertEquals(1, allocator.getConflictCounter().get());
+    }
+
+    @Test
+    public void shouldReuseReleasedAndReseedWhenExhausted() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        LeaseAllocator allocator = new LeaseAllocator(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=1");
+
+        assertEquals("0", allocator.allocate("local", parameter, "pod-a"));
+        assertEquals("1", allocator.allocate("local", parameter, "pod-b"));
+        assertNull(allocator.allocate("local", parameter, "pod-c"));
+        assertEquals(1, allocator.getReseedCounter().get());
+
+        storageProvider.getStore().remove("local/leases/snowflake.0");
+        allocator.release("local", parameter, "0");
+        assertEquals("0", allocator.allocate("local", parameter, "pod-c"));
+
+        //deleted elsewhere without a release, found again on reseed
+        storageProvider.getStore().remove("local/leases/snowflake.1");
+        assertEquals("1", allocator.allocate("local", parameter, "pod-d"));
+        assertEquals(2, allocator.getReseedCounter().get());
+    }
+
+    @Test
+    public void shouldTakePreferredIndexInOnePut() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        LeaseAllocator allocator = new LeaseAllocator(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=ORDINAL,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        assertTrue(allocator.allocatePreferred("local", parameter, "web-3", 3));
+        assertEquals("web-3", storageProvider.getStore().get("local/leases/snowflake.3"));
+        assertEquals(0, storageProvider.getStoreGetCounter());
+
+        //restarted pod with the same name already holds it
+        assertTrue(allocator.allocatePreferred("local", parameter, "web-3", 3));
+        //someone else holds it
+        assertFalse(allocator.allocatePreferred("local", parameter, "web-4", 3));
+        assertEquals(2, allocator.getConflictCounter().get());
+    }
+
+    @Test
+    public void shouldFailAllocationWhenPutFailsWithoutConflict() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider() {
+            @Override
+            public void put(String storagePrefix, Parameter key, String value, Boolean ignorePutFailure) {
+                if (failing.get()) {
+                    throw new RuntimeException("throttled");
+                }
+                super.put(storagePrefix, key, value, ignorePutFailure);
+            }
+        };
+        LeaseAllocator allocator = new LeaseAllocator(storageProvider);
+        LeaseParameter parameter = new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+
+        try {
+            allocator.allocate("local", parameter, "pod-a");
+            fail("Expected allocation to fail");
+        } catch (RuntimeException e) {
+            assertEquals("throttled", e.getMessage());
+        }
+        try {
+            allocator.allocatePreferred("local", parameter, "pod-a", 3);
+            fail("Expected allocation to fail");
+        } catch (RuntimeException e) {
+            assertEquals("throttled", e.getMessage());
+        }
+        assertEquals(0, allocator.getConflictCounter().get());
+
+        //the failed index was given back rather than left marked
+        failing.set(false);
+        assertEquals("0", allocator.allocate("local", parameter, "pod-a"));
+    }
+}
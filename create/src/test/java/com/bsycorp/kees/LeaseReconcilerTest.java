@@ -0,0 +1,128 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.storage.InMemoryStorageProvider;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.cache.Indexer;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LeaseReconcilerTest {
+
+    @Rule
+    public KubernetesServer server = new KubernetesServer(false, true);
+
+    @Test
+    public void shouldReclaimLeasesOfMissingPods() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        storageProvider.getStore().put("local/leases/snowflake.0", "pod-live");
+        storageProvider.getStore().put("local/leases/snowflake.1", "pod-gone");
+        storageProvider.getStore().put("local/leases/snowflake2.0", "pod-gone");
+        server.getClient().pods().inNamespace("default").create(pod("pod-live"));
+
+        LeaseReconciler reconciler = new LeaseReconciler(server.getClient(), storageProvider, new LeaseAllocator(storageProvider));
+        reconciler.track("local", new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10"));
+
+        assertEquals(1, reconciler.reconcile());
+        assertTrue(storageProvider.getStore().containsKey("local/leases/snowflake.0"));
+        assertFalse(storageProvider.getStore().containsKey("local/leases/snowflake.1"));
+        //not a tracked prefix
+        assertTrue(storageProvider.getStore().containsKey("local/leases/snowflake2.0"));
+        assertEquals(1, reconciler.getReclaimedCounter().get());
+        assertEquals(1, reconciler.getRunCounter().get());
+    }
+
+    @Test
+    public void shouldTrackLeasePrefixesFromListedPods() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        storageProvider.getStore().put("local/leases/snowflake.1", "pod-gone");
+        server.getClient().pods().inNamespace("default").create(pod("pod-live"));
+
+        LeaseReconciler reconciler = new LeaseReconciler(server.getClient(), storageProvider, new LeaseAllocator(storageProvider));
+
+        //first run only learns the prefix from the pod annotations
+        assertEquals(0, reconciler.reconcile());
+        assertEquals(1, reconciler.reconcile());
+        assertFalse(storageProvider.getStore().containsKey("local/leases/snowflake.1"));
+    }
+
+    @Test
+    public void shouldListAllPodsWhenInformersAreScoped() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        storageProvider.getStore().put("local/leases/snowflake.0", "pod-in-scope");
+        storageProvider.getStore().put("local/leases/snowflake.1", "pod-out-of-scope");
+        storageProvider.getStore().put("local/leases/snowflake.2", "pod-gone");
+        server.getClient().pods().inNamespace("default").create(pod("pod-in-scope"));
+        server.getClient().pods().inNamespace("default").create(pod("pod-out-of-scope"));
+
+        //synced informer that only sees the pod inside the watch scope
+        @SuppressWarnings("unchecked")
+        SharedIndexInformer<Pod> podInformer = mock(SharedIndexInformer.class);
+        @SuppressWarnings("unchecked")
+        Indexer<Pod> indexer = mock(Indexer.class);
+        when(podInformer.hasSynced()).thenReturn(true);
+        when(podInformer.getIndexer()).thenReturn(indexer);
+        when(indexer.list()).thenReturn(Collections.singletonList(pod("pod-in-scope")));
+
+        LeaseReconciler reconciler = new LeaseReconciler(server.getClient(), storageProvider, new LeaseAllocator(storageProvider));
+        reconciler.setPodInformers(Collections.singletonList(podInformer), false);
+        reconciler.track("local", new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10"));
+
+        assertEquals(1, reconciler.reconcile());
+        assertTrue(storageProvider.getStore().containsKey("local/leases/snowflake.0"));
+        assertTrue(storageProvider.getStore().containsKey("local/leases/snowflake.1"));
+        assertFalse(storageProvider.getStore().containsKey("local/leases/snowflake.2"));
+    }
+
+    @Test
+    public void shouldKeepLeaseOfPodCachedSinceListing() throws Exception {
+        InMemoryStorageProvider storageProvider = new InMemoryStorageProvider();
+        storageProvider.getStore().put("local/leases/snowflake.0", "pod-late");
+        storageProvider.getStore().put("local/leases/snowflake.1", "pod-gone");
+
+        //created after the pods were listed, only the informer has seen it
+        @SuppressWarnings("unchecked")
+        SharedIndexInformer<Pod> podInformer = mock(SharedIndexInformer.class);
+        @SuppressWarnings("unchecked")
+        Indexer<Pod> indexer = mock(Indexer.class);
+        when(podInformer.getIndexer()).thenReturn(indexer);
+        when(indexer.byIndex(CreateMain.POD_NAME_INDEX, "pod-late")).thenReturn(Collections.singletonList(pod("pod-late")));
+
+        LeaseReconciler reconciler = new LeaseReconciler(server.getClient(), storageProvider, new LeaseAllocator(storageProvider));
+        reconciler.setPodInformers(Collections.singletonList(podInformer), false);
+        reconciler.track("local", new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10"));
+
+        assertEquals(1, reconciler.reconcile());
+        assertTrue(storageProvider.getStore().containsKey("local/leases/snowflake.0"));
+        assertFalse(storageProvider.getStore().containsKey("local/leases/snowflake.1"));
+        //looked up by name rather than scanning the cache
+        verify(indexer, never()).list();
+    }
+
+    private Pod pod(String name) {
+        Map<String, String> annotations = new HashMap<>();
+        annotations.put("init.bsycorp.com/storage-prefix", "local");
+        annotations.put("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10");
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace("default")
+                .withAnnotations(annotations)
+                .endMetadata()
+                .build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+public class LockerTest {
+
+    @Test
+    public void shouldBoundLocksByStripes() {
+        Locker locker = new Locker(16);
+        Set<Lock> locks = new HashSet<>();
+        IntStream.range(0, 10000).forEach(i -> locks.add(locker.getLock("pod-" + i)));
+
+        assertEquals(16, locker.getStripeCount());
+        assertEquals(16, locks.size());
+        assertSame(locker.getLock("pod-1"), locker.getLock("pod-1"));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldRecordContention() throws Exception {
+        Locker locker = new Locker(16);
+        CountDownLatch locked = new CountDownLatch(1);
+
+        locker.lock("pod-1");
+        Thread waiter = new Thread(() -> {
+            locked.countDown();
+            locker.lock("pod-1");
+            locker.unlock("pod-1");
+        });
+        waiter.start();
+        locked.await();
+        //give the waiter time to block on the lock
+        while (!((ReentrantLock) locker.getLock("pod-1")).hasQueuedThreads()) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        locker.unlock("pod-1");
+        waiter.join();
+
+        assertEquals(2, locker.getAcquiredCounter().get());
+        assertEquals(1, locker.getContendedCounter().get());
+        assertTrue(locker.getTotalWaitNanos().get() > 0);
+        assertTrue(locker.getTotalHoldNanos().get() >= locker.getTotalWaitNanos().get());
+        assertEquals("pod-1", locker.getHottestKeys(5).get(0));
+
+        //tracking starts afresh after a drain
+        assertEquals("pod-1", locker.drainHottestKeys(5).get(0));
+        assertTrue(locker.getHottestKeys(5).isEmpty());
+    }
+}
@@ -0,0 +1,175 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.Watcher;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PodWorkQueueTest {
+
+    @Test(timeout = 10000)
+    public void shouldCoalesceUpsertsButKeepDeleteOrder() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        PodWorkQueue queue = new PodWorkQueue((action, pod) -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(action + ":" + pod.getResourceVersion());
+            done.countDown();
+            return CompletableFuture.completedFuture(true);
+        }, executorService);
+
+        //first event is picked up straight away and blocks, everything after queues behind it
+        assertTrue(queue.add(Watcher.Action.ADDED, pod("1")));
+        Thread.sleep(200);
+        assertTrue(queue.add(Watcher.Action.MODIFIED, pod("2")));
+        assertFalse(queue.add(Watcher.Action.MODIFIED, pod("3")));
+        assertFalse(queue.add(Watcher.Action.MODIFIED, pod("4")));
+        assertTrue(queue.add(Watcher.Action.DELETED, pod("5")));
+        assertEquals(3, queue.getDepth().get());
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+        assertEquals(2, queue.getCoalescedCounter().get());
+        assertEquals(0, queue.getDepth().get());
+        assertEquals(3, handled.size());
+        assertEquals("ADDED:1", handled.get(0));
+        assertEquals("MODIFIED:4", handled.get(1));
+        assertEquals("DELETED:5", handled.get(2));
+        queue.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldRetryFailedEventsWithBackoff() throws Exception {
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        environment.put("EVENT_RETRY_BASE_DELAY_MILLIS", "10");
+        Utils.setEnvironment(environment);
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            PodWorkQueue queue = new PodWorkQueue((action, pod) -> {
+                if (attempts.incrementAndGet() < 3) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                done.countDown();
+                return CompletableFuture.completedFuture(true);
+            }, Executors.newFixedThreadPool(1));
+
+            queue.add(Watcher.Action.ADDED, pod("1"));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+            assertEquals(2, queue.getRetryCounter().get());
+            queue.shutdown();
+        } finally {
+            Utils.setEnvironment(null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldHandleOtherPodsWhileResultPending() throws Exception {
+        CompletableFuture<Boolean> slowResult = new CompletableFuture<>();
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch otherHandled = new CountDownLatch(1);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        //a single worker, so the other pod can only be handled if the slow one gave it back
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        PodWorkQueue queue = new PodWorkQueue((action, pod) -> {
+            handled.add(pod.getName() + ":" + pod.getResourceVersion());
+            if (pod.getName().equals("slow")) {
+                slowStarted.countDown();
+                return slowResult;
+            }
+            otherHandled.countDown();
+            return CompletableFuture.completedFuture(true);
+        }, executorService);
+
+        queue.add(Watcher.Action.ADDED, pod("slow", "1"));
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        queue.add(Watcher.Action.MODIFIED, pod("slow", "2"));
+        queue.add(Watcher.Action.ADDED, pod("other", "1"));
+        assertTrue(otherHandled.await(5, TimeUnit.SECONDS));
+        //the slow pod's next event still waits for its first
+        assertEquals(Arrays.asList("slow:1", "other:1"), new ArrayList<>(handled));
+
+        slowResult.complete(true);
+        while (queue.getDepth().get() > 0) {
+            Thread.sleep(10);
+        }
+        assertEquals("slow:2", handled.get(2));
+        executorService.shutdown();
+        queue.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldRateLimitEventsPerPod() throws Exception {
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        environment.put("EVENT_MIN_INTERVAL_MILLIS", "300");
+        Utils.setEnvironment(environment);
+        try {
+            List<String> handled = Collections.synchronizedList(new ArrayList<>());
+            List<Long> handledAt = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch first = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(3);
+            PodWorkQueue queue = new PodWorkQueue((action, pod) -> {
+                handled.add(pod.getName() + ":" + pod.getResourceVersion());
+                handledAt.add(System.currentTimeMillis());
+                first.countDown();
+                done.countDown();
+                return CompletableFuture.completedFuture(true);
+            }, Executors.newFixedThreadPool(1));
+
+            queue.add(Watcher.Action.ADDED, pod("1"));
+            assertTrue(first.await(5, TimeUnit.SECONDS));
+            //a pod changing faster than the interval only has its latest state handled once the interval is up
+            assertTrue(queue.add(Watcher.Action.MODIFIED, pod("2")));
+            assertFalse(queue.add(Watcher.Action.MODIFIED, pod("3")));
+            assertFalse(queue.add(Watcher.Action.MODIFIED, pod("4")));
+            //other pods aren't held up
+            queue.add(Watcher.Action.ADDED, pod("other", "1"));
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("pod1:1", "other:1", "pod1:4"), new ArrayList<>(handled));
+            assertTrue(handledAt.get(2) - handledAt.get(0) >= 250);
+            assertTrue(handledAt.get(1) - handledAt.get(0) < 300);
+            queue.shutdown();
+        } finally {
+            Utils.setEnvironment(null);
+        }
+    }
+
+    private PodDescriptor pod(String resourceVersion) {
+        return pod("pod1", resourceVersion);
+    }
+
+    private PodDescriptor pod(String name, String resourceVersion) {
+        return PodDescriptor.from(new PodBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace("default")
+                .withResourceVersion(resourceVersion)
+                .endMetadata()
+                .build());
+    }
+}
@@ -0,0 +1,64 @@
+package com.bsycorp.kees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    @Test(timeout = 10000)
+    public void shouldShareInFlightResult() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> inFlight = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        results.add(singleFlight.execute("local/common.key", () -> {
+            calls.incrementAndGet();
+            return inFlight;
+        }));
+        //callers arriving while it is in flight get the same result back straight away rather than waiting
+        for (int i = 0; i < 9; i++) {
+            results.add(singleFlight.execute("local/common.key", () -> CompletableFuture.completedFuture("value-" + calls.incrementAndGet())));
+        }
+        assertEquals(9, singleFlight.getSharedCounter().get());
+        assertFalse(results.get(0).isDone());
+        for (CompletableFuture<String> result : results) {
+            assertSame(results.get(0), result);
+        }
+
+        inFlight.complete("value-1");
+        for (CompletableFuture<String> result : results) {
+            assertEquals("value-1", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getExecutionCounter().get());
+    }
+
+    @Test
+    public void shouldRetryAfterFailure() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.execute("local/common.key", () -> {
+                throw new RuntimeException("storage unavailable");
+            }).get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RuntimeException);
+            assertEquals("storage unavailable", e.getCause().getMessage());
+        }
+
+        assertEquals("value", singleFlight.execute("local/common.key", () -> CompletableFuture.completedFuture("value")).get());
+        assertEquals(2, singleFlight.getExecutionCounter().get());
+    }
+}
@@ -1,14 +1,15 @@
 package com.bsycorp.kees.storage;
 
 import com.bsycorp.kees.models.Parameter;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class InMemoryStorageProvider implements StorageProvider {
 
-    private Map<String, String> store = new HashMap<>();
+    //key pairs are stored from the I/O workers while the event worker carries on with leases
+    private Map<String, String> store = new ConcurrentHashMap<>();
     private int storeHighwaterMark = 0;
     private int storeGetCounter = 0;
 
@@ -59,6 +60,14 @@ public class InMemoryStorageProvider implements StorageProvider {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Map<String, String> getEntriesByParameter(String storagePrefix, Parameter parameter) {
+        storeGetCounter += 1;
+        return store.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(parameter.getStorageFullPath(storagePrefix)))
+                .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
+    }
+
     @Override
     public boolean exists(String storagePrefix, Parameter key) {
         String fullKey = key.getStorageFullPath(storagePrefix);
@@ -4,6 +4,7 @@ import static com.bsycorp.kees.Utils.getAnnotationDomain;
 import static com.bsycorp.kees.Utils.setupProxyProperties;
 
 import com.bsycorp.kees.models.LeaseParameter;
+import com.bsycorp.kees.models.ResolvedLeaseParameter;
 import com.bsycorp.kees.models.ModeEnum;
 import com.bsycorp.kees.models.Parameter;
 import com.bsycorp.kees.models.ResourceParameter;
@@ -18,11 +19,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 public class InitMain {
 
@@ -85,13 +96,13 @@ public class InitMain {
             if (tableName == null) {
                 throw new Exception("No table name annotation specified");
             }
-            primaryStorageProvider = new DynamoDBStorageProvider(tableName);
+            primaryStorageProvider = DynamoDBStorageProvider.forEnvironment(envLabel);
             secondaryStorageProvider = new LocalStorageProvider();
         } else {
             if (tableName == null) {
                 throw new Exception("No table name annotation specified");
             }
-            primaryStorageProvider = new DynamoDBStorageProvider(tableName);
+            primaryStorageProvider = DynamoDBStorageProvider.forEnvironment(envLabel);
         }
 
         //parser annotations from podinfo
@@ -102,58 +113,29 @@ public class InitMain {
         boolean hadError = false;
         List<Parameter> parameters = annotationParser.parseFlatFile(getAnnotationsFile());
         LOG.info("Found {} parameters to lookup", parameters.size());
-        for (Parameter parameter : parameters) {
+        List<Future<String>> results = retrieveValues(parameters, storagePrefix, podName);
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter parameter = parameters.get(i);
+            if (results.get(i) == null) {
+                hadError = true;
+                LOG.error("No lookup was made for annotation: {}", parameter.getFullAnnotationName());
+                continue;
+            }
             try {
+                //results are collected in annotation order regardless of the order they completed in, so output is stable
+                String encodedValue = results.get(i).get();
                 String fileKey = parameter.getParameterNameWithField();
                 if (parameter instanceof SecretParameter) {
-                    //secret params are encoded at rest, so get retrieves an encodedValue
-                    String encodedValue = primaryStorageProvider.getValueByKey(storagePrefix, parameter);
-                    if (encodedValue == null && secondaryStorageProvider != null) {
-                        //if secondary provider configured, try that
-                        encodedValue = secondaryStorageProvider.getValueByKey(storagePrefix, parameter);
-                    }
-                    if (encodedValue == null) {
-                        LOG.info("Couldn't find value for parameter: {}, failing..", fileKey);
-                        throw new RuntimeException("Couldn't find value for parameter:" + parameter.getFullAnnotationName());
-                    }
                     retrievedSecrets.put(fileKey, encodedValue);
-
                 } else if (parameter instanceof ResourceParameter) {
-                    //resource params are encoded at rest, so retrieves an encoded value
-                    String encodedValue = primaryStorageProvider.getValueByKey(storagePrefix, parameter);
-                    if (encodedValue == null && secondaryStorageProvider != null) {
-                        //if secondary provider configured, try that
-                        encodedValue = secondaryStorageProvider.getValueByKey(storagePrefix, parameter);
-                    }
-                    if (encodedValue == null) {
-                        LOG.info("Couldn't find value for parameter: {}, failing..", fileKey);
-                        throw new RuntimeException("Couldn't find value for parameter:" + parameter.getFullAnnotationName());
-                    }
                     retrievedResources.put(fileKey, encodedValue);
-
                 } else if (parameter instanceof LeaseParameter) {
-                    if (podName == null) {
-                        throw new Exception("Pod name is required for leases");
-                    }
-
-                    //lease params are looked up by value rather than key
-                    String leasePrefix = parameter.getStorageFullPath(storagePrefix);
-                    String leaseKey = primaryStorageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
-                    if ((leaseKey == null || leaseKey.isEmpty()) && secondaryStorageProvider != null) {
-                        //if secondary provider configured, try that
-                        leaseKey = secondaryStorageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
-                    }
-                    if (leaseKey == null) {
-                        LOG.info("Couldn't find key for parameter: {}, failing..", leasePrefix);
-                        throw new RuntimeException("Couldn't find key for parameter:" + parameter.getFullAnnotationName());
-                    }
-                    String leaseValue = leaseKey.substring(leasePrefix.length() + 1) ;
-
-                    retrievedLeases.put(parameter.getParameterNameWithField(), Base64.getEncoder().encodeToString(leaseValue.getBytes(StandardCharsets.UTF_8)));
-                } else {
-                    throw new RuntimeException("Unsupported parameter type");
+                    retrievedLeases.put(fileKey, encodedValue);
                 }
-            } catch (Exception e) {
+            } catch (ExecutionException e) {
+                hadError = true;
+                LOG.error("Error getting value for annotation: " + parameter.getFullAnnotationName(), e.getCause());
+            } catch (CancellationException | RejectedExecutionException e) {
                 hadError = true;
                 LOG.error("Error getting value for annotation: " + parameter.getFullAnnotationName(), e);
             }
@@ -198,6 +180,146 @@ public class InitMain {
         LOG.info("Stored retrieved resources. Done.");
     }
 
+    //retrieve all parameter values, either one at a time on the calling thread or concurrently with bounded parallelism
+    List<Future<String>> retrieveValues(List<Parameter> parameters, String storagePrefix, String podName) {
+        List<FutureTask<String>> tasks = new ArrayList<>(Collections.nCopies(parameters.size(), null));
+        int parallelism = Math.min(getRetrievalParallelism(), parameters.size());
+        ExecutorService executorService = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+
+        try {
+            //leases are the slowest lookups, so start them first
+            for (int i = 0; i < parameters.size(); i++) {
+                Parameter parameter = parameters.get(i);
+                if (parameter instanceof LeaseParameter) {
+                    tasks.set(i, new FutureTask<>(() -> retrieveLeaseValue((LeaseParameter) parameter, storagePrefix, podName)));
+                    execute(executorService, tasks.get(i));
+                }
+            }
+
+            //everything else is fetched from the primary provider in batches while the leases are being looked up
+            Map<String, String> prefetchedValues = prefetchValues(parameters, storagePrefix);
+            for (int i = 0; i < parameters.size(); i++) {
+                Parameter parameter = parameters.get(i);
+                if (!(parameter instanceof LeaseParameter)) {
+                    tasks.set(i, new FutureTask<>(() -> retrieveValue(parameter, storagePrefix, prefetchedValues)));
+                    execute(executorService, tasks.get(i));
+                }
+            }
+
+            //wait for everything to finish, failures are reported by the caller
+            for (FutureTask<String> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException | CancellationException e) {
+                    //ignore, handled by caller
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(tasks);
+            throw new RuntimeException("Interrupted while retrieving values", e);
+        } catch (RuntimeException e) {
+            //failed part way through submitting, lookups not yet created are left null
+            cancel(tasks);
+            throw e;
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+        return new ArrayList<>(tasks);
+    }
+
+    private void cancel(List<FutureTask<String>> tasks) {
+        for (FutureTask<String> task : tasks) {
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private void execute(ExecutorService executorService, FutureTask<String> task) {
+        if (executorService == null) {
+            task.run();
+        } else {
+            try {
+                executorService.execute(task);
+            } catch (RejectedExecutionException e) {
+                //cancelled so the caller reports it along with any other failed lookups
+                LOG.error("Unable to schedule lookup", e);
+                task.cancel(false);
+            }
+        }
+    }
+
+    //returns values for all non lease parameters from the primary provider, or null if the batch lookup failed
+    Map<String, String> prefetchValues(List<Parameter> parameters, String storagePrefix) {
+        List<Parameter> keys = parameters.stream()
+                .filter(p -> !(p instanceof LeaseParameter))
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return primaryStorageProvider.getValuesByKeys(storagePrefix, keys);
+        } catch (Exception e) {
+            LOG.warn("Error batch retrieving values, falling back to individual lookups", e);
+            return null;
+        }
+    }
+
+    String retrieveValue(Parameter parameter, String storagePrefix, Map<String, String> prefetchedValues) {
+        String fileKey = parameter.getParameterNameWithField();
+        if (parameter instanceof SecretParameter || parameter instanceof ResourceParameter) {
+            //secret and resource params are encoded at rest, so get retrieves an encodedValue
+            String encodedValue = prefetchedValues != null
+                    ? prefetchedValues.get(parameter.getStorageFullPath(storagePrefix))
+                    : primaryStorageProvider.getValueByKey(storagePrefix, parameter);
+            if (encodedValue == null && secondaryStorageProvider != null) {
+                //if secondary provider configured, try that
+                encodedValue = secondaryStorageProvider.getValueByKey(storagePrefix, parameter);
+            }
+            if (encodedValue == null) {
+                LOG.info("Couldn't find value for parameter: {}, failing..", fileKey);
+                throw new RuntimeException("Couldn't find value for parameter:" + parameter.getFullAnnotationName());
+            }
+            return encodedValue;
+
+        } else {
+            throw new RuntimeException("Unsupported parameter type");
+        }
+    }
+
+    String retrieveLeaseValue(LeaseParameter parameter, String storagePrefix, String podName) throws Exception {
+        if (podName == null) {
+            throw new Exception("Pod name is required for leases");
+        }
+
+        //ordinal leases are usually at the preferred index, check that single item before looking up by value
+        Integer preferredIndex = parameter.getPreferredIndex(podName);
+        if (preferredIndex != null) {
+            String preferredValue = String.valueOf(preferredIndex);
+            if (podName.equals(primaryStorageProvider.getValueByKey(storagePrefix, new ResolvedLeaseParameter(parameter, preferredValue)))) {
+                return Base64.getEncoder().encodeToString(preferredValue.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        //lease params are looked up by value rather than key
+        String leasePrefix = parameter.getStorageFullPath(storagePrefix);
+        String leaseKey = primaryStorageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
+        if ((leaseKey == null || leaseKey.isEmpty()) && secondaryStorageProvider != null) {
+            //if secondary provider configured, try that
+            leaseKey = secondaryStorageProvider.getKeyByParameterAndValue(storagePrefix, parameter, podName);
+        }
+        if (leaseKey == null) {
+            LOG.info("Couldn't find key for parameter: {}, failing..", leasePrefix);
+            throw new RuntimeException("Couldn't find key for parameter:" + parameter.getFullAnnotationName());
+        }
+        String leaseValue = leaseKey.substring(leasePrefix.length() + 1) ;
+        return Base64.getEncoder().encodeToString(leaseValue.getBytes(StandardCharsets.UTF_8));
+    }
+
     String getStoragePrefix() throws IOException {
         String storagePrefix;
 
@@ -288,6 +410,15 @@ public class InitMain {
         return leasesFile;
     }
 
+    int getRetrievalParallelism() {
+        //defaults to sequential retrieval
+        String value = Utils.getEnvironment().get("RETRIEVAL_PARALLELISM");
+        if (value == null) {
+            return 1;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
     ModeEnum getMode() throws IOException {
         Properties properties = new Properties();
         properties.load(new FileInputStream(getAnnotationsFile()));
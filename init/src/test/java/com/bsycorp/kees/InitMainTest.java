@@ -1,8 +1,12 @@
 package com.bsycorp.kees;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import com.bsycorp.kees.models.LeaseParameter;
 import com.bsycorp.kees.models.ModeEnum;
+import com.bsycorp.kees.models.Parameter;
+import com.bsycorp.kees.models.SecretParameter;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.ClassRule;
@@ -11,6 +15,8 @@ import org.junit.contrib.java.lang.system.EnvironmentVariables;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 public class InitMainTest {
@@ -81,6 +87,27 @@ public class InitMainTest {
 
     }
 
+    @Test
+    public void shouldBeSuccessfulWithParallelRetrieval() throws Exception {
+        init("annotations.txt");
+        environmentVariables.set("RETRIEVAL_PARALLELISM", "4");
+
+        try {
+            InitMain.main();
+        } finally {
+            environmentVariables.clear("RETRIEVAL_PARALLELISM");
+        }
+
+        String expectedSecrets = FileUtils.readFileToString(new File(this.getClass().getClassLoader().getResource("expected-secrets.properties").getFile()), "UTF-8");
+        assertEquals(expectedSecrets, FileUtils.readFileToString(tempSecretsFile, "UTF-8"));
+
+        String expectedResources = FileUtils.readFileToString(new File(this.getClass().getClassLoader().getResource("expected-resources.properties").getFile()), "UTF-8");
+        assertEquals(expectedResources, FileUtils.readFileToString(tempResourcesFile, "UTF-8"));
+
+        String expectedLeases = FileUtils.readFileToString(new File(this.getClass().getClassLoader().getResource("expected-leases.properties").getFile()), "UTF-8");
+        assertEquals(expectedLeases, FileUtils.readFileToString(tempLeasesFile, "UTF-8"));
+    }
+
     /*
      * Kind of hard to test as for deterministic GPG keys, we get different armored outputs (The underlying RSA keys are the same).
      * Test not null for private and public key. Password output is deterministic.
@@ -100,6 +127,26 @@ public class InitMainTest {
         Assert.assertEquals("SmRGbU5tSUh0MjhZc3RXcQ==", props.getProperty("common.gpg.v1_password"));
     }
 
+    @Test
+    public void shouldRestoreInterruptWhenRetrievalInterrupted() throws Exception {
+        environmentVariables.set("RETRIEVAL_PARALLELISM", "4");
+        List<Parameter> parameters = Arrays.asList(
+                new SecretParameter("secret.bsycorp.com/common.key", "kind=DYNAMIC,type=RANDOM,size=128"),
+                new LeaseParameter("lease.bsycorp.com/snowflake", "kind=INDEX,storageKeyPrefix=snowflake,rangeStart=0,rangeEnd=10"));
+
+        Thread.currentThread().interrupt();
+        try {
+            new InitMain().retrieveValues(parameters, "local", "test-pod-name");
+            Assert.fail("Expected retrieval to fail");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            environmentVariables.clear("RETRIEVAL_PARALLELISM");
+        }
+    }
+
     @Test(expected = Exception.class)
     public void shouldBeUnsuccessful() throws Exception {
         FileUtils.copyFile(new File(InitMainTest.class.getClassLoader().getResource("annotations-malformed.txt").getFile()), tempAnnotationsFile);